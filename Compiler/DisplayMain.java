@@ -0,0 +1,7 @@
+import emulator_program.DisplayCapture;
+
+public class DisplayMain {
+	public static void main(String[] args) {
+		DisplayCapture.startCapture(args);
+	}
+}
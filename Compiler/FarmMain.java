@@ -0,0 +1,7 @@
+import emulator_program.CpuFarm;
+
+public class FarmMain {
+	public static void main(String[] args) {
+		CpuFarm.startFarm(args);
+	}
+}
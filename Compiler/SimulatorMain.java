@@ -0,0 +1,7 @@
+import simulator_program.Simulator;
+
+public class SimulatorMain {
+	public static void main(String[] args) {
+		Simulator.startSimulation(args);
+	}
+}
@@ -0,0 +1,192 @@
+package common_program;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader for the Logic Sim chip files and the Compiler metrics.
+ * Objects become Maps, arrays become Lists, numbers become Longs (or Doubles if they have a fraction or exponent).
+ */
+public class JsonReader {
+	private final String text;
+	private int position;
+
+	private JsonReader(String text) {
+		this.text = text;
+		position = 0;
+	}
+
+	public static Object parse(String text) throws IOException {
+		JsonReader reader = new JsonReader(text);
+		Object value = reader.readValue();
+		reader.skipWhitespace();
+		if (reader.position != text.length()) {
+			throw reader.error("Unexpected Text after the JSON Value");
+		}
+		return value;
+	}
+
+	private Object readValue() throws IOException {
+		skipWhitespace();
+		if (position >= text.length()) {
+			throw error("Unexpected End of the File");
+		}
+		char c = text.charAt(position);
+		switch (c) {
+			case '{':
+				return readObject();
+			case '[':
+				return readArray();
+			case '"':
+				return readString();
+			case 't':
+				expectWord("true");
+				return Boolean.TRUE;
+			case 'f':
+				expectWord("false");
+				return Boolean.FALSE;
+			case 'n':
+				expectWord("null");
+				return null;
+			default:
+				return readNumber();
+		}
+	}
+
+	private Map<String, Object> readObject() throws IOException {
+		Map<String, Object> object = new HashMap<>();
+		position++;
+		skipWhitespace();
+		if (peek() == '}') {
+			position++;
+			return object;
+		}
+		while (true) {
+			skipWhitespace();
+			if (peek() != '"') {
+				throw error("Expected a Key");
+			}
+			String key = readString();
+			skipWhitespace();
+			expect(':');
+			object.put(key, readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				position++;
+			} else {
+				expect('}');
+				return object;
+			}
+		}
+	}
+
+	private List<Object> readArray() throws IOException {
+		List<Object> array = new ArrayList<>();
+		position++;
+		skipWhitespace();
+		if (peek() == ']') {
+			position++;
+			return array;
+		}
+		while (true) {
+			array.add(readValue());
+			skipWhitespace();
+			if (peek() == ',') {
+				position++;
+			} else {
+				expect(']');
+				return array;
+			}
+		}
+	}
+
+	private String readString() throws IOException {
+		StringBuilder result = new StringBuilder();
+		position++;
+		while (true) {
+			char c = peek();
+			position++;
+			if (c == '"') {
+				return result.toString();
+			}
+			if (c != '\\') {
+				result.append(c);
+				continue;
+			}
+			char escaped = peek();
+			position++;
+			switch (escaped) {
+				case 'n' -> result.append('\n');
+				case 't' -> result.append('\t');
+				case 'r' -> result.append('\r');
+				case 'b' -> result.append('\b');
+				case 'f' -> result.append('\f');
+				case 'u' -> {
+					if (position + 4 > text.length()) {
+						throw error("Invalid Unicode Escape");
+					}
+					result.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+					position += 4;
+				}
+				default -> result.append(escaped);
+			}
+		}
+	}
+
+	private Number readNumber() throws IOException {
+		int start = position;
+		boolean isInteger = true;
+		while (position < text.length()) {
+			char c = text.charAt(position);
+			if (c == '.' || c == 'e' || c == 'E') {
+				isInteger = false;
+			} else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+				break;
+			}
+			position++;
+		}
+		String number = text.substring(start, position);
+		try {
+			if (isInteger) {
+				return Long.valueOf(number);
+			}
+			return Double.valueOf(number);
+		} catch (NumberFormatException e) {
+			throw error("Invalid Number \"" + number + "\"");
+		}
+	}
+
+	private void expectWord(String word) throws IOException {
+		if (!text.startsWith(word, position)) {
+			throw error("Expected \"" + word + "\"");
+		}
+		position += word.length();
+	}
+
+	private void expect(char c) throws IOException {
+		if (peek() != c) {
+			throw error("Expected '" + c + "'");
+		}
+		position++;
+	}
+
+	private char peek() throws IOException {
+		if (position >= text.length()) {
+			throw error("Unexpected End of the File");
+		}
+		return text.charAt(position);
+	}
+
+	private void skipWhitespace() {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+	}
+
+	private IOException error(String message) {
+		return new IOException(message + " at Position " + position + "!");
+	}
+}
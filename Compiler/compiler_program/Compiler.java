@@ -8,52 +8,147 @@ import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.function.Function;
+import java.util.function.IntSupplier;
 import java.util.function.Supplier;
 
 import compiler_program.Compiler.Command.PseudoCommand;
 
 public class Compiler {
-	private static final boolean DEBUG_CLEANED_ASSEMBLY = true;
-
 	private static final ByteArrayOutputStream errorBuffer = new ByteArrayOutputStream();
 	private static final PrintStream errorBufferStream = new PrintStream(errorBuffer);
 
+	private static final long DEFAULT_PROFILE_CYCLES = 100_000;
+	private static final int[] DEFAULT_DATA_REGISTERS = { 1, 2 };
+	/**
+	 * 0xD0 to 0xD8 are unused, the Keys and Displays above can't be initialized (see "Data_and_Instruction_Set.txt")
+	 */
+	private static final int LAST_RAM_ADDRESS = 0xCF;
+
+	private final CompilerMetrics metrics;
+	/**
+	 * the metrics of the compilation of the rearranged source, null without the profile-guided optimization
+	 */
+	private CompilerMetrics optimizedMetrics;
+	/**
+	 * null unless the Compiler runs with "--debug"
+	 */
+	private final String debugName;
+	private PrintStream debugStream;
+	private boolean isDebugStreamBroken;
+	private String dataReport;
+
+	private Compiler(String name, boolean debug) {
+		metrics = new CompilerMetrics(name);
+		debugName = debug ? "out/" + name + "_debug.txt" : null;
+	}
+
+	/**
+	 * Compiles every .txt File that is passed, e.g. "Snake_Program.txt Test_Program4.txt --metrics out/metrics.json".
+	 */
 	public static void startCompiling(String[] args) {
-		if (args.length == 0) {
+		List<String> fileNames = new ArrayList<>();
+		boolean optimize = false;
+		ProfileSettings profileSettings = new ProfileSettings();
+		String metricsName = null;
+		boolean debug = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--pgo")) {
+				optimize = true;
+				if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+					profileSettings.cycles = Long.parseLong(args[++i]);
+				}
+			} else if (args[i].equals("--pgo-runs") || args[i].equals("--pgo-keys")) {
+				if (i + 1 == args.length || !args[i + 1].matches("\\d+")) {
+					System.out.println("Please pass a Number after \"" + args[i] + "\"!");
+					return;
+				}
+				int value = Integer.parseInt(args[i + 1]);
+				if (args[i].equals("--pgo-runs")) {
+					profileSettings.runs = Math.max(1, value);
+				} else {
+					profileSettings.keyInterval = value;
+				}
+				i++;
+			} else if (args[i].equals("--metrics")) {
+				if (i + 1 == args.length) {
+					System.out.println("Please pass the Metrics File after \"--metrics\"!");
+					return;
+				}
+				metricsName = args[++i];
+			} else if (args[i].equals("--debug")) {
+				debug = true;
+			} else if (args[i].startsWith("--")) {
+				System.out.println("Unknown Argument \"" + args[i] + "\"! (only \"--pgo [cycles]\", \"--pgo-runs n\", \"--pgo-keys n\","
+				+ " \"--metrics file.json\" and \"--debug\" are supported)");
+				return;
+			} else if (!args[i].endsWith(".txt")) {
+				System.out.println("Can only read .txt Files!");
+				return;
+			} else {
+				fileNames.add(args[i]);
+			}
+		}
+		if (fileNames.isEmpty()) {
 			System.out.println("Please pass the File to compile as Argument!");
 			return;
 		}
 
-		if (!args[0].endsWith(".txt")) {
-			System.out.println("Can only read .txt Files!");
-			return;
+		List<CompilerMetrics> allMetrics = new ArrayList<>();
+		for (String fileName : fileNames) {
+			List<CompilerMetrics> metrics = compileFile(fileName, optimize ? profileSettings : null, debug);
+			if (metrics != null) {
+				allMetrics.addAll(metrics);
+			}
+		}
+
+		if (metricsName != null && !allMetrics.isEmpty()) {
+			try {
+				CompilerMetrics.writeJson(metricsName, allMetrics);
+				System.out.println("The Metrics of " + allMetrics.size() + " Compilation" + (allMetrics.size() == 1 ? " were" : "s were") + " added to \"" + metricsName + "\".");
+			} catch (IOException e) {
+				System.out.println("An Error occurred while writing the Metrics!");
+			}
 		}
-		String name = args[0].substring(0, args[0].length() - 4);
+	}
+
+	/**
+	 * @param profileSettings null to compile without the profile-guided optimization
+	 * @param debug writes the cleaned and the fully resolved Assembly into out/name_debug.txt
+	 * @return the metrics of the compilation (and of the compilation of the rearranged source),
+	 * or null if the File could not be read or written
+	 */
+	private static List<CompilerMetrics> compileFile(String fileName, ProfileSettings profileSettings, boolean debug) {
+		String name = fileName.substring(0, fileName.length() - 4);
 		String resultName = "out/" + name + "_out.txt";
+		errorBuffer.reset();
 
 		List<String> rawLines;
 		try {
-			rawLines = Files.readAllLines(Paths.get(args[0]));
+			rawLines = Files.readAllLines(Paths.get(fileName));
 		} catch (IOException e) {
 			System.out.println("An Error occurred while reading the File!");
-			return;
+			return null;
 		}
 
-		Compiler compiler = new Compiler();
+		Compiler compiler = new Compiler(name, debug);
 		List<Line> lines = compiler.getLinesFromStrings(rawLines);
 
 		int numProblems = 0;
 		numProblems += compiler.compile(lines);
+		if (profileSettings != null && numProblems == 0) {
+			lines = compiler.optimizeWithProfile(lines, name, profileSettings);
+		}
 		String result = compiler.convertToString(lines);
 
 		try {
-			Files.write(Paths.get(resultName), result.getBytes(), StandardOpenOption.CREATE);
+			Files.write(Paths.get(resultName), result.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
 		} catch (IOException e) {
 			System.out.println("An Error occurred while writing the compiled Program!");
-			return;
+			return null;
 		}
 
 		if (numProblems == 0) {
@@ -62,45 +157,205 @@ public class Compiler {
 			System.out.println(errorBuffer);
 			System.out.println(name + " was compiled with " + numProblems + " Problems and saved in \"" + resultName + "\".");
 		}
+		if (compiler.dataReport != null) {
+			System.out.println(compiler.dataReport);
+		}
+		List<CompilerMetrics> metrics = new ArrayList<>();
+		metrics.add(compiler.metrics);
+		if (compiler.optimizedMetrics != null) {
+			metrics.add(compiler.optimizedMetrics);
+		}
+		return metrics;
 	}
 
 	private int compile(List<Line> lines) {
 		int numProblems = 0;
-		prepareLines(lines);
+		measure("prepareLines", lines, () -> {
+			prepareLines(lines);
+			return 0;
+		});
+		printDebugListing("Cleaned Assembly:", lines);
 
 		HashMap<String, String> defines = new HashMap<>();
-		numProblems += getDefines(lines, defines);
-		replaceAllTextBasedOnMap(lines, defines);
+		numProblems += measure("getDefines", lines, () -> getDefines(lines, defines));
+		measure("replaceDefines", lines, () -> {
+			replaceAllTextBasedOnMap(lines, defines);
+			return 0;
+		});
+
+		numProblems += measure("getData", lines, () -> getData(lines));
 
 		HashMap<String, String> labels = new HashMap<>();
-		numProblems += getLabels(lines, labels);
-		replaceAllTextBasedOnMap(lines, labels);
+		numProblems += measure("getLabels", lines, () -> getLabels(lines, labels));
+		measure("replaceLabels", lines, () -> {
+			replaceAllTextBasedOnMap(lines, labels);
+			return 0;
+		});
 
-		numProblems += setUpCommands(lines);
-		setFinalLineNumbers(lines);
+		numProblems += measure("setUpCommands", lines, () -> setUpCommands(lines));
+		measure("setFinalLineNumbers", lines, () -> {
+			setFinalLineNumbers(lines);
+			return 0;
+		});
 
-		numProblems += generateAllMachineCodeParts(lines);
-		generateMachineCodes(lines);
+		numProblems += measure("generateAllMachineCodeParts", lines, () -> generateAllMachineCodeParts(lines));
+		printDebugListing("Fully Resolved Assembly:", lines);
+		measure("generateMachineCodes", lines, () -> {
+			generateMachineCodes(lines);
+			return 0;
+		});
 
+		metrics.setNumProblems(numProblems);
+		if (debugStream != null) {
+			debugStream.close();
+			debugStream = null;
+		}
 		return numProblems;
 	}
 
-	private void prepareLines(List<Line> lines) {
+	/**
+	 * Runs one phase of the compilation and records it with the Lines and Tokens left afterwards.
+	 *
+	 * @return the number of Problems the phase found
+	 */
+	private int measure(String name, List<Line> lines, IntSupplier phase) {
+		metrics.startPhase();
+		int numProblems = phase.getAsInt();
+		metrics.stopPhase();
+		int numLines = 0;
+		int numTokens = 0;
+		for (Line line : lines) {
+			if (!line.isValid) continue;
+			numLines++;
+			numTokens += line.parts.size();
+		}
+		metrics.endPhase(name, numLines, numTokens);
+		return numProblems;
+	}
+
+	/**
+	 * The listings go into out/name_debug.txt, which is only written with "--debug".
+	 */
+	private void printDebugListing(String title, List<Line> lines) {
+		if (debugName == null || isDebugStreamBroken) return;
+		if (debugStream == null) {
+			try {
+				debugStream = new PrintStream(Files.newOutputStream(Paths.get(debugName)));
+			} catch (IOException e) {
+				System.out.println("An Error occurred while creating \"" + debugName + "\"!");
+				isDebugStreamBroken = true;
+				return;
+			}
+		}
+
+		debugStream.println(title);
 		for (Line line : lines) {
-			line.cleanLine();
 			if (line.isValid) {
-				line.prepareParts();
+				debugStream.println(line);
 			}
 		}
+		debugStream.println();
+	}
 
-		if (DEBUG_CLEANED_ASSEMBLY) {
-			System.out.println("Cleaned Assembly:");
-			for (Line line : lines) {
-				if (line.isValid) {
-					System.out.println(line);
-				}
+	/**
+	 * Profiles the compiled Program in the emulator and compiles it again, rearranged by the ProfileGuidedOptimizer.
+	 * Every run uses its own seed (0, 1, 2, ...) for the registers and the key presses.
+	 * The rearranged source is saved as out/name_pgo.txt.
+	 *
+	 * @return the optimized Lines, or the given Lines if the optimized Program behaves differently in any of the runs
+	 */
+	private List<Line> optimizeWithProfile(List<Line> lines, String name, ProfileSettings settings) {
+		List<String> instructions = new ArrayList<>();
+		List<Integer> sourceLineNumbers = new ArrayList<>();
+		for (Line line : lines) {
+			if (!line.isValid) continue;
+			instructions.add(line.toString());
+			sourceLineNumbers.add(line.lineNumber);
+		}
+		if (instructions.size() > ProfileGuidedOptimizer.MAX_INSTRUCTIONS) return lines;
+		short[] machineCodes = getMachineCodes(lines);
+
+		ProfileGuidedOptimizer optimizer = new ProfileGuidedOptimizer(instructions, sourceLineNumbers);
+		for (int run = 0; run < settings.runs; run++) {
+			optimizer.profile(machineCodes, settings.cycles, run, settings.keyInterval);
+		}
+		List<String> optimizedSource = optimizer.optimize();
+
+		Compiler optimizedCompiler = new Compiler(name + "_pgo", debugName != null);
+		List<Line> optimizedLines = optimizedCompiler.getLinesFromStrings(optimizedSource);
+		int numOptimizedProblems = optimizedCompiler.compile(optimizedLines);
+		optimizedMetrics = optimizedCompiler.metrics;
+		if (numOptimizedProblems > 0) {
+			System.out.println("The optimized Program could not be compiled, so the Program is saved without optimizations:");
+			System.out.println(errorBuffer);
+			errorBuffer.reset();
+			return lines;
+		}
+		short[] optimizedMachineCodes = getMachineCodes(optimizedLines);
+		long[] comparison = new long[3];
+		for (int run = 0; run < settings.runs; run++) {
+			long[] runComparison = ProfileGuidedOptimizer.compareRuns(machineCodes, optimizedMachineCodes, settings.cycles, run,
+			settings.keyInterval);
+			if (runComparison == null) {
+				System.out.println("The optimized Program does not make the same RAM writes as the original one (in run "
+				+ run + "), so the Program is saved without optimizations.");
+				return lines;
+			}
+			for (int i = 0; i < comparison.length; i++) {
+				comparison[i] += runComparison[i];
+			}
+		}
+
+		String sourceName = "out/" + name + "_pgo.txt";
+		try {
+			Files.write(Paths.get(sourceName), optimizer.getAnnotatedSource(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		} catch (IOException e) {
+			System.out.println("An Error occurred while writing the optimized Source!");
+		}
+
+		System.out.println("Profile-guided Optimization (" + optimizer.getProfiledCycles() + " profiled Cycles in " + settings.runs
+		+ " Runs, " + instructions.size() + " -> " + optimizer.getNumInstructions() + " Instructions, source in \"" + sourceName + "\"):");
+		for (String entry : optimizer.getReport()) {
+			System.out.println("  " + entry);
+		}
+		long expectedCycles = optimizer.getProfiledCycles() - optimizer.getSavedCycles();
+		System.out.printf("Expected Cycles for the profiled runs: %d -> %d (-%.1f%%)%n", optimizer.getProfiledCycles(), expectedCycles,
+		100.0 * optimizer.getSavedCycles() / Math.max(1, optimizer.getProfiledCycles()));
+		if (comparison[0] > 0) {
+			System.out.println("Measured in the emulator: the same " + comparison[0] + " RAM writes took " + comparison[1]
+			+ " Cycles before and " + comparison[2] + " Cycles after the optimization.");
+		} else {
+			System.out.println("The Program writes nothing into the RAM, so the optimization could not be measured.");
+		}
+		System.out.println();
+		return optimizedLines;
+	}
+
+	private static class ProfileSettings {
+		private long cycles = DEFAULT_PROFILE_CYCLES;
+		private int runs = ProfileGuidedOptimizer.DEFAULT_RUNS;
+		/**
+		 * the keys change every keyInterval key reads, 0 = no keys
+		 */
+		private int keyInterval = ProfileGuidedOptimizer.DEFAULT_KEY_INTERVAL;
+	}
+
+	private short[] getMachineCodes(List<Line> lines) {
+		short[] machineCodes = new short[ProfileGuidedOptimizer.MAX_INSTRUCTIONS];
+		int counter = 0;
+		for (Line line : lines) {
+			if (!line.isValid || counter >= machineCodes.length) continue;
+			machineCodes[counter++] = line.machineCode;
+		}
+		return machineCodes;
+	}
+
+	private void prepareLines(List<Line> lines) {
+		for (Line line : lines) {
+			line.cleanLine();
+			if (line.isValid) {
+				line.prepareParts();
 			}
-			System.out.println();
 		}
 	}
 
@@ -147,6 +402,129 @@ public class Compiler {
 		return numProblems;
 	}
 
+	/**
+	 * "#data address value1 value2 ..." declares the initial RAM contents, starting at the given address.
+	 * All #data Tags of the document are turned into one sequence of li and sb instructions, which is placed where
+	 * the first #data Tag is. It only overwrites the registers given by "#dataregs r1 r2 ..." (default r1 and r2).
+	 */
+	private int getData(List<Line> lines) {
+		int numProblems = 0;
+		LinkedHashMap<Integer, Integer> data = new LinkedHashMap<>();
+		int[] dataRegisters = DEFAULT_DATA_REGISTERS;
+		Line firstDataLine = null;
+		for (Line line : lines) {
+			if (!line.isValid) continue;
+
+			if (line.parts.get(0).equals("#data")) {
+				if (firstDataLine == null) {
+					firstDataLine = line;
+				}
+				numProblems += readData(line, data);
+				line.isValid = false;
+			} else if (line.parts.get(0).equals("#dataregs")) {
+				int[] registers = readDataRegisters(line);
+				if (registers == null) {
+					numProblems++;
+				} else {
+					dataRegisters = registers;
+				}
+				line.isValid = false;
+			}
+		}
+		if (data.isEmpty()) return numProblems;
+
+		int[] addresses = data.keySet().stream().mapToInt(Integer::intValue).toArray();
+		int[] values = data.values().stream().mapToInt(Integer::intValue).toArray();
+		DataInitializer initializer = new DataInitializer(addresses, values, dataRegisters);
+		List<String> instructions = initializer.generateInstructions();
+		if (instructions == null) {
+			errorBufferStream.println(firstDataLine.getErrorString() + "#dataregs needs at least 2 Registers for this Data!");
+			return numProblems + 1;
+		}
+
+		List<Line> generatedLines = new ArrayList<>();
+		for (String instruction : instructions) {
+			Line generatedLine = new Line(instruction, lines, firstDataLine.lineNumber);
+			generatedLine.cleanLine();
+			generatedLine.prepareParts();
+			generatedLines.add(generatedLine);
+		}
+		lines.addAll(lines.indexOf(firstDataLine) + 1, generatedLines);
+
+		int naive = initializer.getNaiveNumberOfInstructions();
+		int saved = naive - instructions.size();
+		dataReport = "#data: " + addresses.length + " Bytes are initialized with " + instructions.size() + " Instructions"
+		+ (initializer.isOptimal() ? " (optimal)" : "") + " instead of " + naive + ", saving " + saved + " ROM Words and "
+		+ saved + " Cycles.";
+		return numProblems;
+	}
+
+	/**
+	 * @return number of Problems
+	 */
+	private int readData(Line line, HashMap<Integer, Integer> data) {
+		if (line.parts.size() < 3) {
+			errorBufferStream.println(line.getErrorString() + "#data expects an Address and at least one Value!");
+			return 1;
+		}
+		int address;
+		try {
+			address = Integer.decode(line.parts.get(1));
+		} catch (NumberFormatException e) {
+			errorBufferStream.println(line.getErrorString() + "Could not parse the Address!");
+			return 1;
+		}
+
+		int numProblems = 0;
+		for (int i = 2; i < line.parts.size(); i++, address++) {
+			if (address < 0 || address > LAST_RAM_ADDRESS) {
+				errorBufferStream.println(line.getErrorString() + "Address " + address + " is not in the RAM (0x00 to 0xCF)"
+				+ " and can't be initialized with #data!");
+				return numProblems + 1;
+			}
+			int value;
+			try {
+				value = Integer.decode(line.parts.get(i));
+			} catch (NumberFormatException e) {
+				errorBufferStream.println(line.getErrorString() + "Could not parse the Value \"" + line.parts.get(i) + "\"!");
+				numProblems++;
+				continue;
+			}
+			if (value < -128 || value > 255) {
+				errorBufferStream.println(line.getErrorString() + "Value " + value + " is not in valid range!");
+				numProblems++;
+				continue;
+			}
+			Integer previous = data.put(address, value & 0xff);
+			if (previous != null && previous != (value & 0xff)) {
+				errorBufferStream.println(line.getErrorString() + "Address " + address + " is already initialized with "
+				+ previous + "!");
+				numProblems++;
+			}
+		}
+		return numProblems;
+	}
+
+	/**
+	 * @return the register numbers, or null if they are invalid
+	 */
+	private int[] readDataRegisters(Line line) {
+		int[] registers = new int[line.parts.size() - 1];
+		for (int i = 0; i < registers.length; i++) {
+			String register = line.parts.get(i + 1);
+			if (register.length() != 2 || register.charAt(0) != 'r' || register.charAt(1) < '1' || register.charAt(1) > '7') {
+				errorBufferStream.println(line.getErrorString() + "Invalid Register \"" + register + "\" (r1 to r7 are allowed)!");
+				return null;
+			}
+			registers[i] = register.charAt(1) - '0';
+		}
+		if (registers.length == 0) {
+			errorBufferStream.println(line.getErrorString() + "#dataregs expects at least one Register!");
+			return null;
+		}
+		return registers;
+	}
+
 	private void replaceAllTextBasedOnMap(List<Line> lines, HashMap<String, String> replacementMap) {
 		for (String toBeReplaced : replacementMap.keySet()) {
 			for (Line line : lines) {
@@ -183,16 +561,6 @@ public class Compiler {
 			numProblems += line.generateMachineCodeParts();
 		}
 
-		if (DEBUG_CLEANED_ASSEMBLY) {
-			System.out.println("Fully Resolved Assembly:");
-			for (Line line : lines) {
-				if (line.isValid) {
-					System.out.println(line);
-				}
-			}
-			System.out.println();
-		}
-
 		return numProblems;
 	}
 
@@ -700,14 +1068,15 @@ public class Compiler {
 				lineNumber = 1;
 			}
 
-			int validLineNumber = getNextValidLine(line.allLines, lineNumber);
-			if (validLineNumber == -1) {
+			Line validLine = getNextValidLine(line.allLines, lineNumber);
+			int actualLineNumber = 0;
+			if (validLine == null) {
 				errorBufferStream.println(line.getErrorString() + "No valid Line left after the given Line Number to jump to!");
 				numProblems++;
-				validLineNumber = 1;
+			} else {
+				actualLineNumber = validLine.machineCodeLineNumber;
 			}
 
-			int actualLineNumber = line.allLines.get(validLineNumber - 1).machineCodeLineNumber;
 			if (actualLineNumber < 0 || actualLineNumber >= 256) {
 				errorBufferStream.println(line.getErrorString() + "Line Number " + actualLineNumber
 				+ " is not in valid range! (This is the final translated Line Number.)");
@@ -722,14 +1091,16 @@ public class Compiler {
 			return numProblems;
 		}
 
-		private int getNextValidLine(List<Line> lines, int currentLine) {
-			while (currentLine - 1 < lines.size()) {
-				if (lines.get(currentLine - 1).isValid) {
-					return currentLine;
+		/**
+		 * Searches by the original Line Number, since Lines generated by #data share the Line Number of their Tag.
+		 */
+		private Line getNextValidLine(List<Line> lines, int currentLine) {
+			for (Line line : lines) {
+				if (line.lineNumber >= currentLine && line.isValid) {
+					return line;
 				}
-				currentLine++;
 			}
-			return -1;
+			return null;
 		}
 	}
 
@@ -0,0 +1,275 @@
+package compiler_program;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import common_program.JsonReader;
+
+/**
+ * Wall time, allocated Bytes and the Lines and Tokens left after every phase of one compilation.
+ * Every phase is also committed as a CompilerPhaseEvent, so it shows up in Java Flight Recorder recordings.
+ */
+public class CompilerMetrics {
+	/**
+	 * the metrics file keeps the latest compilations, the phase totals include all compilations ever written into it
+	 */
+	private static final int MAX_KEPT_COMPILATIONS = 100;
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = getThreadBean();
+
+	private final String file;
+	private final String time;
+	private final List<Phase> phases = new ArrayList<>();
+	private int numProblems;
+
+	private CompilerPhaseEvent event;
+	private long phaseStartNanos;
+	private long phaseStartAllocatedBytes;
+	private long phaseNanos;
+	private long phaseAllocatedBytes;
+
+	public CompilerMetrics(String file) {
+		this(file, Instant.now().toString());
+	}
+
+	private CompilerMetrics(String file, String time) {
+		this.file = file;
+		this.time = time;
+	}
+
+	public void startPhase() {
+		event = new CompilerPhaseEvent();
+		event.begin();
+		phaseStartAllocatedBytes = getThreadAllocatedBytes();
+		phaseStartNanos = System.nanoTime();
+	}
+
+	/**
+	 * Ends the measurement of the current phase, so counting its Lines and Tokens for endPhase is not measured.
+	 */
+	public void stopPhase() {
+		phaseNanos = System.nanoTime() - phaseStartNanos;
+		phaseAllocatedBytes = THREAD_BEAN != null ? getThreadAllocatedBytes() - phaseStartAllocatedBytes : -1;
+		event.end();
+	}
+
+	public void endPhase(String name, int lines, int tokens) {
+		if (event.shouldCommit()) {
+			event.file = file;
+			event.phase = name;
+			event.lines = lines;
+			event.tokens = tokens;
+			event.allocatedBytes = phaseAllocatedBytes;
+			event.commit();
+		}
+		event = null;
+		phases.add(new Phase(name, phaseNanos, phaseAllocatedBytes, lines, tokens));
+	}
+
+	public void setNumProblems(int numProblems) {
+		this.numProblems = numProblems;
+	}
+
+	public long getNanos() {
+		long nanos = 0;
+		for (Phase phase : phases) {
+			nanos += phase.nanos;
+		}
+		return nanos;
+	}
+
+	public long getAllocatedBytes() {
+		long allocatedBytes = 0;
+		for (Phase phase : phases) {
+			if (phase.allocatedBytes < 0) return -1;
+			allocatedBytes += phase.allocatedBytes;
+		}
+		return allocatedBytes;
+	}
+
+	/**
+	 * Adds the compilations to the metrics file (if it exists already, its compilations and totals are kept),
+	 * so a batch of files or repeated runs of the Compiler are aggregated in one place.
+	 */
+	public static void writeJson(String fileName, List<CompilerMetrics> compilations) throws IOException {
+		Path path = Paths.get(fileName);
+		List<CompilerMetrics> kept = new ArrayList<>();
+		Map<String, PhaseTotal> totals = new LinkedHashMap<>();
+		long numCompilations = 0;
+		if (Files.exists(path)) {
+			try {
+				@SuppressWarnings("unchecked")
+				Map<String, Object> old = (Map<String, Object>) JsonReader.parse(Files.readString(path));
+				numCompilations = (Long) old.get("compilations");
+				for (Object total : (List<?>) old.get("phases")) {
+					PhaseTotal phaseTotal = PhaseTotal.fromJson((Map<?, ?>) total);
+					totals.put(phaseTotal.name, phaseTotal);
+				}
+				for (Object compilation : (List<?>) old.get("latest")) {
+					kept.add(fromJson((Map<?, ?>) compilation));
+				}
+			} catch (IOException | RuntimeException e) {
+				System.out.println("Could not read the old Metrics in \"" + fileName + "\", they are overwritten!");
+				kept.clear();
+				totals.clear();
+				numCompilations = 0;
+			}
+		}
+
+		for (CompilerMetrics compilation : compilations) {
+			for (Phase phase : compilation.phases) {
+				totals.computeIfAbsent(phase.name, PhaseTotal::new).add(phase);
+			}
+			kept.add(compilation);
+			numCompilations++;
+		}
+		if (kept.size() > MAX_KEPT_COMPILATIONS) {
+			kept = kept.subList(kept.size() - MAX_KEPT_COMPILATIONS, kept.size());
+		}
+
+		StringBuilder json = new StringBuilder();
+		json.append("{\n");
+		json.append("\t\"compilations\": ").append(numCompilations).append(",\n");
+		json.append("\t\"phases\": [");
+		String separator = "\n";
+		for (PhaseTotal total : totals.values()) {
+			json.append(separator).append("\t\t");
+			total.appendJson(json);
+			separator = ",\n";
+		}
+		json.append("\n\t],\n");
+		json.append("\t\"latest\": [");
+		separator = "\n";
+		for (CompilerMetrics compilation : kept) {
+			json.append(separator);
+			compilation.appendJson(json);
+			separator = ",\n";
+		}
+		json.append("\n\t]\n");
+		json.append("}\n");
+		Files.writeString(path, json);
+	}
+
+	private void appendJson(StringBuilder json) {
+		json.append("\t\t{\n");
+		json.append("\t\t\t\"file\": ").append(quote(file)).append(",\n");
+		json.append("\t\t\t\"time\": ").append(quote(time)).append(",\n");
+		json.append("\t\t\t\"problems\": ").append(numProblems).append(",\n");
+		json.append("\t\t\t\"nanos\": ").append(getNanos()).append(",\n");
+		json.append("\t\t\t\"allocatedBytes\": ").append(getAllocatedBytes()).append(",\n");
+		json.append("\t\t\t\"phases\": [");
+		String separator = "\n";
+		for (Phase phase : phases) {
+			json.append(separator).append("\t\t\t\t");
+			phase.appendJson(json);
+			separator = ",\n";
+		}
+		json.append("\n\t\t\t]\n");
+		json.append("\t\t}");
+	}
+
+	private static CompilerMetrics fromJson(Map<?, ?> json) {
+		CompilerMetrics metrics = new CompilerMetrics((String) json.get("file"), (String) json.get("time"));
+		metrics.numProblems = ((Long) json.get("problems")).intValue();
+		for (Object phase : (List<?>) json.get("phases")) {
+			Map<?, ?> p = (Map<?, ?>) phase;
+			metrics.phases.add(new Phase((String) p.get("phase"), (Long) p.get("nanos"), (Long) p.get("allocatedBytes"),
+			((Long) p.get("lines")).intValue(), ((Long) p.get("tokens")).intValue()));
+		}
+		return metrics;
+	}
+
+	private static long getThreadAllocatedBytes() {
+		if (THREAD_BEAN == null) return -1;
+		return THREAD_BEAN.getCurrentThreadAllocatedBytes();
+	}
+
+	private static String quote(String s) {
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadBean() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		if (!threadBean.isThreadAllocatedMemorySupported()) return null;
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		return threadBean;
+	}
+
+	/**
+	 * allocatedBytes is -1 if the JVM can't measure it
+	 */
+	private static class Phase {
+		private final String name;
+		private final long nanos;
+		private final long allocatedBytes;
+		private final int lines;
+		private final int tokens;
+
+		private Phase(String name, long nanos, long allocatedBytes, int lines, int tokens) {
+			this.name = name;
+			this.nanos = nanos;
+			this.allocatedBytes = allocatedBytes;
+			this.lines = lines;
+			this.tokens = tokens;
+		}
+
+		private void appendJson(StringBuilder json) {
+			json.append("{ \"phase\": ").append(quote(name)).append(", \"nanos\": ").append(nanos)
+			.append(", \"allocatedBytes\": ").append(allocatedBytes).append(", \"lines\": ").append(lines)
+			.append(", \"tokens\": ").append(tokens).append(" }");
+		}
+	}
+
+	private static class PhaseTotal {
+		private final String name;
+		private long count;
+		private long totalNanos;
+		private long minNanos = Long.MAX_VALUE;
+		private long maxNanos;
+		private long totalAllocatedBytes;
+		private long maxAllocatedBytes;
+
+		private PhaseTotal(String name) {
+			this.name = name;
+		}
+
+		private void add(Phase phase) {
+			count++;
+			totalNanos += phase.nanos;
+			minNanos = Math.min(minNanos, phase.nanos);
+			maxNanos = Math.max(maxNanos, phase.nanos);
+			totalAllocatedBytes += Math.max(0, phase.allocatedBytes);
+			maxAllocatedBytes = Math.max(maxAllocatedBytes, phase.allocatedBytes);
+		}
+
+		private void appendJson(StringBuilder json) {
+			json.append("{ \"phase\": ").append(quote(name)).append(", \"count\": ").append(count)
+			.append(", \"totalNanos\": ").append(totalNanos).append(", \"averageNanos\": ").append(totalNanos / count)
+			.append(", \"minNanos\": ").append(minNanos).append(", \"maxNanos\": ").append(maxNanos)
+			.append(", \"totalAllocatedBytes\": ").append(totalAllocatedBytes)
+			.append(", \"averageAllocatedBytes\": ").append(totalAllocatedBytes / count)
+			.append(", \"maxAllocatedBytes\": ").append(maxAllocatedBytes).append(" }");
+		}
+
+		private static PhaseTotal fromJson(Map<?, ?> json) {
+			PhaseTotal total = new PhaseTotal((String) json.get("phase"));
+			total.count = (Long) json.get("count");
+			total.totalNanos = (Long) json.get("totalNanos");
+			total.minNanos = (Long) json.get("minNanos");
+			total.maxNanos = (Long) json.get("maxNanos");
+			total.totalAllocatedBytes = (Long) json.get("totalAllocatedBytes");
+			total.maxAllocatedBytes = (Long) json.get("maxAllocatedBytes");
+			return total;
+		}
+	}
+}
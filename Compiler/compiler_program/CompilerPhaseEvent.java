@@ -0,0 +1,35 @@
+package compiler_program;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recorded for every phase of a compilation when the Compiler runs with Java Flight Recorder,
+ * e.g. "java -XX:StartFlightRecording=filename=out/compiler.jfr CompilerMain assembly-program.txt".
+ */
+@Name("compiler_program.CompilerPhase")
+@Label("Compiler Phase")
+@Category({ "Logic Sim CPU", "Compiler" })
+@Description("One phase of the Compiler with the Lines and Tokens left afterwards")
+@StackTrace(false)
+public class CompilerPhaseEvent extends jdk.jfr.Event {
+	@Label("File")
+	public String file;
+
+	@Label("Phase")
+	public String phase;
+
+	@Label("Lines")
+	public int lines;
+
+	@Label("Tokens")
+	public int tokens;
+
+	@Label("Allocated")
+	@DataAmount
+	public long allocatedBytes;
+}
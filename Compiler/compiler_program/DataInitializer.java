@@ -0,0 +1,282 @@
+package compiler_program;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Generates the instructions that write the bytes declared with #data into the RAM.
+ *
+ * Every instruction takes one ROM word and one cycle, and li can load any byte, so the only thing that can be saved
+ * are li instructions: every store needs its address and its value in a register (r0 provides 0 for free),
+ * and a value that is already in a register (e.g. because it was the address or value of an earlier store) is reused.
+ * The order of the stores and which register gets overwritten is found with an IDA* search over the number of li
+ * instructions, which falls back to a greedy order if the search takes too long.
+ */
+public class DataInitializer {
+	/**
+	 * li rA, address; li rV, value; sb rV, (rA)
+	 */
+	public static final int NAIVE_INSTRUCTIONS_PER_BYTE = 3;
+	private static final int MAX_SEARCH_STATES = 500_000;
+	/**
+	 * the pending stores are a bit mask, more stores are split into several parts
+	 */
+	private static final int MAX_STORES_PER_PART = 63;
+	private static final int EMPTY = -1;
+
+	private final int[] addresses;
+	private final int[] values;
+	private final int[] scratchRegisters;
+	private boolean isOptimal;
+
+	private int[] partAddresses;
+	private int[] partValues;
+	private final boolean[] nodeBuffer = new boolean[256];
+	private final List<int[]> searchLoads = new ArrayList<>();
+	private HashMap<String, Integer> visited;
+	private int numSearchStates;
+
+	/**
+	 * @param addresses and values: one byte (0 to 255) per store
+	 * @param scratchRegisters the registers that may be overwritten
+	 */
+	public DataInitializer(int[] addresses, int[] values, int[] scratchRegisters) {
+		this.addresses = addresses;
+		this.values = values;
+		this.scratchRegisters = scratchRegisters;
+	}
+
+	/**
+	 * @return the instructions, or null if there are not enough scratch registers
+	 * (a store of a value other than 0 to an address other than 0 needs two of them)
+	 */
+	public List<String> generateInstructions() {
+		for (int i = 0; i < addresses.length; i++) {
+			int needed = (addresses[i] != 0 ? 1 : 0) + (values[i] != 0 && values[i] != addresses[i] ? 1 : 0);
+			if (needed > scratchRegisters.length) {
+				return null;
+			}
+		}
+
+		List<String> instructions = new ArrayList<>();
+		int[] registers = new int[scratchRegisters.length];
+		Arrays.fill(registers, EMPTY);
+		isOptimal = true;
+		for (int start = 0; start < addresses.length; start += MAX_STORES_PER_PART) {
+			int end = Math.min(addresses.length, start + MAX_STORES_PER_PART);
+			partAddresses = Arrays.copyOfRange(addresses, start, end);
+			partValues = Arrays.copyOfRange(values, start, end);
+
+			List<int[]> loads = getGreedyLoads(registers);
+			List<int[]> optimalLoads = searchOptimalLoads(registers, loads);
+			if (optimalLoads != null) {
+				loads = optimalLoads;
+			} else {
+				isOptimal = false;
+			}
+			addInstructions(instructions, registers, loads);
+		}
+		return instructions;
+	}
+
+	/**
+	 * @return whether the last generated instructions are proven to be the shortest possible
+	 * (with more than 63 Bytes only for every part of 63 Bytes on its own)
+	 */
+	public boolean isOptimal() {
+		return isOptimal;
+	}
+
+	public int getNaiveNumberOfInstructions() {
+		return NAIVE_INSTRUCTIONS_PER_BYTE * addresses.length;
+	}
+
+	/**
+	 * Always loads the value that makes the most stores possible, into the register whose value is needed the least.
+	 */
+	private List<int[]> getGreedyLoads(int[] initialRegisters) {
+		List<int[]> loads = new ArrayList<>();
+		int[] registers = initialRegisters.clone();
+		long pending = storeAll(registers, allStores());
+		while (pending != 0) {
+			int[] best = null;
+			for (int value : getMissingNodes(registers, pending)) {
+				for (int r = 0; r < registers.length; r++) {
+					int old = registers[r];
+					registers[r] = value;
+					int[] score = {
+						Long.bitCount(pending & ~storeAll(registers, pending)),
+						old == EMPTY ? 1 : -countUses(old, pending),
+						countUses(value, pending),
+						r,
+						value
+					};
+					registers[r] = old;
+					if (best == null || Arrays.compare(score, 0, 3, best, 0, 3) > 0) {
+						best = score;
+					}
+				}
+			}
+			registers[best[3]] = best[4];
+			loads.add(new int[] { best[3], best[4] });
+			pending = storeAll(registers, pending);
+		}
+		return loads;
+	}
+
+	/**
+	 * @return the shortest sequence of loads, or null if it could not be found within MAX_SEARCH_STATES
+	 */
+	private List<int[]> searchOptimalLoads(int[] registers, List<int[]> greedyLoads) {
+		long pending = storeAll(registers, allStores());
+		int bound = getMissingNodes(registers, pending).size();
+		numSearchStates = 0;
+		while (bound < greedyLoads.size()) {
+			visited = new HashMap<>();
+			searchLoads.clear();
+			int next = search(registers, pending, 0, bound);
+			if (next == -1) {
+				return new ArrayList<>(searchLoads);
+			}
+			if (numSearchStates > MAX_SEARCH_STATES) {
+				return null;
+			}
+			bound = next;
+		}
+		// nothing is shorter than the greedy solution, so it is optimal as well
+		return greedyLoads;
+	}
+
+	/**
+	 * @return -1 if all stores are done within bound loads, otherwise the smallest bound that could be enough
+	 */
+	private int search(int[] registers, long pending, int numLoads, int bound) {
+		long remaining = storeAll(registers, pending);
+		if (remaining == 0) return -1;
+		List<Integer> missing = getMissingNodes(registers, remaining);
+		int estimate = numLoads + missing.size();
+		if (estimate > bound) return estimate;
+		if (++numSearchStates > MAX_SEARCH_STATES) return Integer.MAX_VALUE;
+
+		int[] sorted = registers.clone();
+		Arrays.sort(sorted);
+		String key = remaining + Arrays.toString(sorted);
+		Integer previous = visited.get(key);
+		if (previous != null && previous <= numLoads) return Integer.MAX_VALUE;
+		visited.put(key, numLoads);
+
+		missing.sort((a, b) -> countUses(b, remaining) - countUses(a, remaining));
+		int nextBound = Integer.MAX_VALUE;
+		for (int value : missing) {
+			for (int r = 0; r < registers.length; r++) {
+				if (isRegisterValueSeenBefore(registers, r)) continue;
+				int[] nextRegisters = registers.clone();
+				nextRegisters[r] = value;
+				searchLoads.add(new int[] { r, value });
+				int result = search(nextRegisters, remaining, numLoads + 1, bound);
+				if (result == -1) return -1;
+				searchLoads.remove(searchLoads.size() - 1);
+				nextBound = Math.min(nextBound, result);
+				if (numSearchStates > MAX_SEARCH_STATES) return Integer.MAX_VALUE;
+			}
+		}
+		return nextBound;
+	}
+
+	/**
+	 * Overwriting one of two registers with the same value gives the same result.
+	 */
+	private static boolean isRegisterValueSeenBefore(int[] registers, int r) {
+		for (int i = 0; i < r; i++) {
+			if (registers[i] == registers[r]) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the loads and the stores in between, registers is updated to the contents afterwards.
+	 */
+	private void addInstructions(List<String> instructions, int[] registers, List<int[]> loads) {
+		long pending = addStores(instructions, registers, allStores());
+		for (int[] load : loads) {
+			registers[load[0]] = load[1];
+			instructions.add("li r" + scratchRegisters[load[0]] + ", " + (byte) load[1]);
+			pending = addStores(instructions, registers, pending);
+		}
+	}
+
+	private long addStores(List<String> instructions, int[] registers, long pending) {
+		for (int i = 0; i < partAddresses.length; i++) {
+			if ((pending & (1L << i)) == 0) continue;
+			if (!isAvailable(registers, partAddresses[i]) || !isAvailable(registers, partValues[i])) continue;
+			instructions.add("sb " + getRegisterName(registers, partValues[i]) + ", (" + getRegisterName(registers, partAddresses[i]) + ")");
+			pending &= ~(1L << i);
+		}
+		return pending;
+	}
+
+	private String getRegisterName(int[] registers, int value) {
+		if (value == 0) return "r0";
+		for (int r = 0; r < registers.length; r++) {
+			if (registers[r] == value) return "r" + scratchRegisters[r];
+		}
+		throw new IllegalStateException("Value " + value + " is not in any Register!");
+	}
+
+	private long allStores() {
+		return (1L << partAddresses.length) - 1;
+	}
+
+	/**
+	 * @return the stores of pending that are still pending after doing all stores that are possible with the registers
+	 */
+	private long storeAll(int[] registers, long pending) {
+		long remaining = pending;
+		for (long rest = pending; rest != 0; rest &= rest - 1) {
+			int i = Long.numberOfTrailingZeros(rest);
+			if (isAvailable(registers, partAddresses[i]) && isAvailable(registers, partValues[i])) {
+				remaining &= ~(1L << i);
+			}
+		}
+		return remaining;
+	}
+
+	private static boolean isAvailable(int[] registers, int value) {
+		if (value == 0) return true;
+		for (int register : registers) {
+			if (register == value) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the values other than 0 that pending stores need, but that are not in any register
+	 */
+	private List<Integer> getMissingNodes(int[] registers, long pending) {
+		Arrays.fill(nodeBuffer, false);
+		List<Integer> missing = new ArrayList<>();
+		for (long rest = pending; rest != 0; rest &= rest - 1) {
+			int i = Long.numberOfTrailingZeros(rest);
+			addMissingNode(registers, partAddresses[i], missing);
+			addMissingNode(registers, partValues[i], missing);
+		}
+		return missing;
+	}
+
+	private void addMissingNode(int[] registers, int value, List<Integer> missing) {
+		if (nodeBuffer[value] || isAvailable(registers, value)) return;
+		nodeBuffer[value] = true;
+		missing.add(value);
+	}
+
+	private int countUses(int value, long pending) {
+		int uses = 0;
+		for (long rest = pending; rest != 0; rest &= rest - 1) {
+			int i = Long.numberOfTrailingZeros(rest);
+			if (partAddresses[i] == value || partValues[i] == value) uses++;
+		}
+		return uses;
+	}
+}
@@ -0,0 +1,661 @@
+package compiler_program;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import emulator_program.CpuFarm;
+import emulator_program.CpuState;
+
+/**
+ * Rearranges a compiled Program based on how often every instruction was executed in a run of the emulator.
+ *
+ * A jump needs la and a branch, so every jump costs two cycles (taken and not taken branches cost the same).
+ * The optimizations therefore remove jumps from the hot paths:
+ * - a conditional Branch over a Jump is inverted, so that it jumps directly (saves 2 words)
+ * - a Branch to the next instruction is removed (saves 2 words)
+ * - a Loop with its condition at the start is rotated, so that the condition is checked at the end
+ * - a Jump to a short block that ends with a Jump is replaced by a copy of that block
+ * - a Loop that is closed by a Jump is unrolled by a factor of 2, so only every second iteration needs the Jump
+ * The last three make the Program longer, so they are applied to the hottest places first, as long as the Program
+ * still fits into 256 instructions.
+ *
+ * All jump addresses have to be loaded with la, since instructions are moved around.
+ * Inverting a Branch is exact unless the compared values differ by exactly 128 (then neither bgt nor bge jumps),
+ * which is why the optimized Program is compared with the original one in several seeded runs.
+ *
+ * The runs start with seeded registers like the instances of the CpuFarm and press random keys.
+ * The keys change every keyInterval reads of a key (not Cycles), so a faster Program sees the same key presses
+ * at the same places as the original one.
+ */
+public class ProfileGuidedOptimizer {
+	public static final int MAX_INSTRUCTIONS = 256;
+	public static final int DEFAULT_RUNS = 8;
+	public static final int DEFAULT_KEY_INTERVAL = 20;
+	private static final int MAX_TAIL_DUPLICATION_LENGTH = 16;
+
+	private final List<Instruction> code;
+	private final List<String> report = new ArrayList<>();
+	private long profiledCycles;
+	private long savedCycles;
+
+	/**
+	 * @param instructions the fully resolved instructions (la contains the final address)
+	 * @param sourceLineNumbers the Line of every instruction in the source file, for the report
+	 */
+	public ProfileGuidedOptimizer(List<String> instructions, List<Integer> sourceLineNumbers) {
+		code = new ArrayList<>();
+		for (int i = 0; i < instructions.size(); i++) {
+			code.add(new Instruction(instructions.get(i).trim().split("\\s+"), sourceLineNumbers.get(i)));
+		}
+		for (Instruction instruction : code) {
+			if (instruction.name.equals("la")) {
+				int address = Integer.parseInt(instruction.args[1]) & 0xff;
+				instruction.target = address < code.size() ? code.get(address) : null;
+			}
+		}
+	}
+
+	/**
+	 * Runs the Program in the emulator and adds up how often every instruction is executed (and every branch is taken).
+	 * Can be called for several runs.
+	 */
+	public void profile(short[] machineCodes, long cycles, long seed, int keyInterval) {
+		ScriptedRun run = new ScriptedRun(machineCodes, seed, keyInterval);
+		while (run.isRunning(cycles)) {
+			int pc = run.cpu.getPc(0);
+			run.step();
+			if (pc < code.size()) {
+				Instruction instruction = code.get(pc);
+				instruction.count++;
+				if (instruction.isBranch() && run.cpu.getPc(0) != pc + 1) {
+					instruction.taken++;
+				}
+			}
+		}
+		profiledCycles += run.cpu.getCycles(0);
+	}
+
+	/**
+	 * @return the optimized Program, one instruction per line (la uses these line numbers)
+	 */
+	public List<String> optimize() {
+		savedCycles = 0;
+		applyShorteningOptimizations();
+		while (true) {
+			Candidate best = null;
+			for (Candidate candidate : getLengtheningCandidates()) {
+				if (candidate.savedCycles <= 0 || code.size() + candidate.addedWords > MAX_INSTRUCTIONS) continue;
+				if (best == null || candidate.savedCycles > best.savedCycles
+				|| (candidate.savedCycles == best.savedCycles && candidate.addedWords < best.addedWords)) {
+					best = candidate;
+				}
+			}
+			if (best == null) break;
+			report.add(best.apply.get());
+			savedCycles += best.savedCycles;
+			applyShorteningOptimizations();
+		}
+		Map<String, Candidate> loopsNotFitting = new LinkedHashMap<>();
+		for (Candidate candidate : getLengtheningCandidates()) {
+			if (!candidate.isLoop || candidate.savedCycles <= 0) continue;
+			Candidate other = loopsNotFitting.get(candidate.description);
+			if (other == null || candidate.addedWords < other.addedWords) {
+				loopsNotFitting.put(candidate.description, candidate);
+			}
+		}
+		for (Candidate candidate : loopsNotFitting.values()) {
+			report.add(candidate.description + " does not fit into " + MAX_INSTRUCTIONS + " Instructions anymore (needs "
+			+ candidate.addedWords + " more Words, would save " + candidate.savedCycles + " Cycles)");
+		}
+		return toSource(false);
+	}
+
+	/**
+	 * @return the optimized Program with the original Line and the execution count of every instruction as comments
+	 */
+	public List<String> getAnnotatedSource() {
+		return toSource(true);
+	}
+
+	public List<String> getReport() {
+		return report;
+	}
+
+	public long getProfiledCycles() {
+		return profiledCycles;
+	}
+
+	/**
+	 * @return the expected number of Cycles the optimized Program saves within the profiled Cycles
+	 */
+	public long getSavedCycles() {
+		return savedCycles;
+	}
+
+	public int getNumInstructions() {
+		return code.size();
+	}
+
+	/**
+	 * Runs both Programs for the given Cycles and compares the memory writes (address and value) they make.
+	 * The optimized Program has to make at least every write of the original one in the same Cycles,
+	 * and if the original Program halts, the optimized one has to halt as well after exactly the same writes.
+	 *
+	 * @return the number of equal memory writes and the Cycles the original and the optimized Program needed for them,
+	 * or null if they write something different or the optimized Program writes less
+	 */
+	public static long[] compareRuns(short[] original, short[] optimized, long cycles, long seed, int keyInterval) {
+		RecordedRun originalRun = recordWrites(original, cycles, seed, keyInterval);
+		RecordedRun optimizedRun = recordWrites(optimized, cycles, seed, keyInterval);
+		List<long[]> originalWrites = originalRun.writes;
+		List<long[]> optimizedWrites = optimizedRun.writes;
+		if (optimizedWrites.size() < originalWrites.size()) {
+			return null;
+		}
+		if (originalRun.isHalted && (!optimizedRun.isHalted || optimizedWrites.size() != originalWrites.size())) {
+			return null;
+		}
+		int common = originalWrites.size();
+		for (int i = 0; i < common; i++) {
+			if (originalWrites.get(i)[0] != optimizedWrites.get(i)[0]) {
+				return null;
+			}
+		}
+		if (common == 0) {
+			return new long[] { 0, 0, 0 };
+		}
+		return new long[] { common, originalWrites.get(common - 1)[1], optimizedWrites.get(common - 1)[1] };
+	}
+
+	/**
+	 * The writes are saved as address << 8 | value and the cycle after the write.
+	 */
+	private static RecordedRun recordWrites(short[] machineCodes, long cycles, long seed, int keyInterval) {
+		List<long[]> writes = new ArrayList<>();
+		ScriptedRun run = new ScriptedRun(machineCodes, seed, keyInterval);
+		while (run.isRunning(cycles)) {
+			CpuState cpu = run.cpu;
+			int instruction = cpu.getInstruction(0, cpu.getPc(0));
+			if (isMemoryAccess(instruction, 0b0001)) {
+				int address = cpu.getRegisterValue(0, (instruction >> 4) & 0x7) & 0xff;
+				int value = cpu.getRegisterValue(0, (instruction >> 8) & 0x7) & 0xff;
+				writes.add(new long[] { address << 8 | value, cpu.getCycles(0) + 1 });
+			}
+			run.step();
+		}
+		return new RecordedRun(writes, run.cpu.isHalted(0));
+	}
+
+	/**
+	 * @param func 0b0000 for lb, 0b0001 for sb
+	 */
+	private static boolean isMemoryAccess(int instruction, int func) {
+		return ((instruction >> 12) & 0xf) == 0b0101 && (instruction & 0xf) == func;
+	}
+
+	private void applyShorteningOptimizations() {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < code.size(); i++) {
+				String result = invertBranchOverJump(i);
+				if (result == null) {
+					result = removeBranchToNext(i);
+				}
+				if (result != null) {
+					report.add(result);
+					changed = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * la rA, T; bgt rA, x, y; la rA, S; j rA; T: ...
+	 * becomes la rA, S; bge rA, y, x; T: ...
+	 */
+	private String invertBranchOverJump(int i) {
+		if (i + 4 >= code.size()) return null;
+		Instruction loadTarget = code.get(i);
+		Instruction branch = code.get(i + 1);
+		Instruction loadSkip = code.get(i + 2);
+		Instruction jump = code.get(i + 3);
+		Instruction target = code.get(i + 4);
+		if (!isConditionalBranchTo(i + 1, target) || !branch.isInvertible() || !isJump(i + 3)) return null;
+		int register = branch.getRegister(0);
+		if (loadSkip.getRegister(0) != register || loadSkip.target == loadSkip || loadSkip.target == jump) return null;
+		if (isTargeted(branch) || isTargeted(loadSkip) || isTargeted(jump) || isLive(register, target)) return null;
+
+		loadTarget.target = loadSkip.target;
+		branch.invert();
+		code.remove(i + 3);
+		code.remove(i + 2);
+		long saved = 2 * loadSkip.count;
+		savedCycles += saved;
+		return "Line " + branch.sourceLineNumber + ": inverted the Branch over the Jump (-2 Words), saving " + saved + " Cycles";
+	}
+
+	/**
+	 * la rA, T; bxx rA, x, y; T: ... becomes T: ...
+	 */
+	private String removeBranchToNext(int i) {
+		if (i + 2 >= code.size()) return null;
+		Instruction load = code.get(i);
+		Instruction branch = code.get(i + 1);
+		Instruction next = code.get(i + 2);
+		if (!load.name.equals("la") || load.target != next || !branch.isBranch()) return null;
+		int register = load.getRegister(0);
+		if (branch.getRegister(0) != register || isTargeted(branch) || isLive(register, next)) return null;
+
+		retarget(load, next);
+		code.remove(i + 1);
+		code.remove(i);
+		long saved = 2 * load.count;
+		savedCycles += saved;
+		return "Line " + branch.sourceLineNumber + ": removed the Branch to the next Instruction (-2 Words), saving " + saved + " Cycles";
+	}
+
+	private List<Candidate> getLengtheningCandidates() {
+		List<Candidate> candidates = new ArrayList<>();
+		for (int e = 1; e < code.size(); e++) {
+			if (!isJump(e) || code.get(e).isOptimized) continue;
+			Instruction jumpTarget = code.get(e - 1).target;
+			int h = code.indexOf(jumpTarget);
+			if (h >= 0 && h < e - 1) {
+				addIfNotNull(candidates, getLoopRotation(h, e));
+				addIfNotNull(candidates, getLoopUnrolling(h, e));
+			}
+			addIfNotNull(candidates, getTailDuplication(e));
+		}
+		return candidates;
+	}
+
+	private static void addIfNotNull(List<Candidate> candidates, Candidate candidate) {
+		if (candidate != null) {
+			candidates.add(candidate);
+		}
+	}
+
+	/**
+	 * H: (condition) la rA, EXIT; bgt rA, x, y; B: (body) la rB, H; j rB; EXIT: ...
+	 * becomes H: (condition) la rA, EXIT; bgt rA, x, y; B: (body) (condition) la rA, B; bge rA, y, x; EXIT: ...
+	 */
+	private Candidate getLoopRotation(int h, int e) {
+		int x = h;
+		while (x < e - 1 && !code.get(x).isBranch()) {
+			x++;
+		}
+		if (x >= e - 2 || e + 1 >= code.size()) return null;
+		Instruction exit = code.get(e + 1);
+		Instruction body = code.get(x + 1);
+		if (!isConditionalBranchTo(x, exit) || !code.get(x).isInvertible()) return null;
+		for (int i = h + 1; i <= x; i++) {
+			if (isTargeted(code.get(i))) return null;
+		}
+		int conditionRegister = code.get(x).getRegister(0);
+		int jumpRegister = code.get(e).getRegister(0);
+		if (isTargeted(code.get(e)) || isLive(conditionRegister, body) || isLive(conditionRegister, exit)
+		|| isLive(jumpRegister, code.get(h))) return null;
+
+		Instruction header = code.get(h);
+		Instruction backJump = code.get(e);
+		long saved = 2 * backJump.count;
+		int conditionLength = x - h;
+		String description = "Line " + header.sourceLineNumber + ": the Loop";
+		return new Candidate(description, true, saved, conditionLength - 1, () -> {
+			int start = code.indexOf(header);
+			int end = code.indexOf(backJump);
+			int branchIndex = start + conditionLength;
+			List<Instruction> condition = copyAlongProfile(start, branchIndex, backJump.count);
+			condition.get(condition.size() - 2).target = code.get(branchIndex + 1);
+			condition.get(condition.size() - 1).invert();
+			retarget(code.get(end - 1), condition.get(0));
+			code.remove(end);
+			code.remove(end - 1);
+			code.addAll(end - 1, condition);
+			return description + " now checks its condition at the end (+" + (conditionLength - 1) + " Words), saving " + saved + " Cycles";
+		});
+	}
+
+	/**
+	 * H: (body) la rB, H; j rB becomes H: (body) (body) la rB, H; j rB
+	 */
+	private Candidate getLoopUnrolling(int h, int e) {
+		int jumpRegister = code.get(e).getRegister(0);
+		if (isLive(jumpRegister, code.get(h))) return null;
+		Instruction header = code.get(h);
+		Instruction backJump = code.get(e);
+		long saved = backJump.count;
+		int added = e - 1 - h;
+		String description = "Line " + header.sourceLineNumber + ": the Loop";
+		return new Candidate(description, true, saved, added, () -> {
+			int start = code.indexOf(header);
+			int end = code.indexOf(backJump) - 1;
+			Map<Instruction, Instruction> copies = new IdentityHashMap<>();
+			List<Instruction> body = new ArrayList<>();
+			for (int i = start; i < end; i++) {
+				Instruction copy = code.get(i).split(code.get(i).count / 2);
+				copies.put(code.get(i), copy);
+				body.add(copy);
+			}
+			for (Instruction copy : body) {
+				if (copy.target != null && copies.containsKey(copy.target)) {
+					copy.target = copies.get(copy.target);
+				}
+			}
+			code.addAll(end, body);
+			backJump.isOptimized = true;
+			return description + " was unrolled by a factor of 2 (+" + added + " Words), saving " + saved + " Cycles";
+		});
+	}
+
+	/**
+	 * la rA, T; j rA becomes a copy of T: ... la rB, U; j rB
+	 */
+	private Candidate getTailDuplication(int e) {
+		Instruction load = code.get(e - 1);
+		Instruction jump = code.get(e);
+		int t = code.indexOf(load.target);
+		if (t < 0 || t == e + 1 || isTargeted(jump) || isLive(load.getRegister(0), load.target)) return null;
+		int u = t;
+		while (u < code.size() && !isJump(u)) {
+			u++;
+		}
+		if (u >= code.size() || u - t + 1 > MAX_TAIL_DUPLICATION_LENGTH || code.get(u - 1).target == code.get(u)) return null;
+		if (t <= e && e <= u) return null;
+		int end = u;
+		int added = u - t + 1 - 2;
+		long saved = 2 * jump.count;
+		return new Candidate("Line " + jump.sourceLineNumber + ": the Jump", false, saved, added, () -> {
+			int start = code.indexOf(load.target);
+			int last = start + (end - t);
+			List<Instruction> block = copyAlongProfile(start, last, jump.count);
+			block.get(block.size() - 1).isOptimized = true;
+			int index = code.indexOf(load);
+			retarget(load, block.get(0));
+			code.remove(index + 1);
+			code.remove(index);
+			code.addAll(index, block);
+			return "Line " + jump.sourceLineNumber + ": replaced the Jump with a copy of its target (+" + added + " Words), saving "
+			+ saved + " Cycles";
+		});
+	}
+
+	/**
+	 * Copies the instructions from start to last, which are entered count times through the copy from now on.
+	 * Every copy takes over its share of the profiled executions from its original: after a conditional branch,
+	 * only the profiled share of not taken branches continues to the next copy.
+	 */
+	private List<Instruction> copyAlongProfile(int start, int last, long count) {
+		List<Instruction> copies = new ArrayList<>();
+		long flow = count;
+		for (int i = start; i <= last; i++) {
+			Instruction copy = code.get(i).split(flow);
+			copies.add(copy);
+			flow = copy.isBranch() ? copy.count - copy.taken : copy.count;
+		}
+		return copies;
+	}
+
+	/**
+	 * @return whether instruction i is a (not always taken) branch to target, whose address is loaded right before it
+	 */
+	private boolean isConditionalBranchTo(int i, Instruction target) {
+		if (i < 1) return false;
+		Instruction branch = code.get(i);
+		Instruction load = code.get(i - 1);
+		return branch.isBranch() && !branch.isUnconditional() && load.name.equals("la")
+		&& load.getRegister(0) == branch.getRegister(0) && load.target == target;
+	}
+
+	/**
+	 * @return whether instruction i is an unconditional jump to an address loaded right before it
+	 */
+	private boolean isJump(int i) {
+		if (i < 1) return false;
+		Instruction jump = code.get(i);
+		Instruction load = code.get(i - 1);
+		return jump.isBranch() && jump.isUnconditional() && load.name.equals("la")
+		&& load.getRegister(0) == jump.getRegister(0) && load.target != null;
+	}
+
+	private boolean isTargeted(Instruction instruction) {
+		for (Instruction other : code) {
+			if (other.target == instruction) return true;
+		}
+		return false;
+	}
+
+	private void retarget(Instruction from, Instruction to) {
+		for (Instruction other : code) {
+			if (other.target == from) {
+				other.target = to;
+			}
+		}
+	}
+
+	/**
+	 * @return whether the value of the register at the start of the instruction might be read
+	 * (unknown jump addresses count as a read)
+	 */
+	private boolean isLive(int register, Instruction start) {
+		if (register == 0) return false;
+		Set<Instruction> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<Integer> toVisit = new ArrayList<>();
+		toVisit.add(code.indexOf(start));
+		while (!toVisit.isEmpty()) {
+			int i = toVisit.remove(toVisit.size() - 1);
+			if (i < 0) return true;
+			Instruction instruction = code.get(i);
+			if (!visited.add(instruction)) continue;
+			if (instruction.reads(register)) return true;
+			if (instruction.writes(register)) continue;
+			if (instruction.isBranch()) {
+				if (i < 1 || !code.get(i - 1).name.equals("la") || code.get(i - 1).getRegister(0) != instruction.getRegister(0)
+				|| isTargeted(instruction)) return true;
+				toVisit.add(code.indexOf(code.get(i - 1).target));
+				if (instruction.isUnconditional()) continue;
+			}
+			// after the last instruction, the remaining ROM contains only NOPs and the PC wraps around
+			toVisit.add((i + 1) % code.size());
+		}
+		return false;
+	}
+
+	private List<String> toSource(boolean annotated) {
+		Map<Instruction, Integer> lineNumbers = new IdentityHashMap<>();
+		for (int i = 0; i < code.size(); i++) {
+			lineNumbers.put(code.get(i), i + 1);
+		}
+		List<String> source = new ArrayList<>();
+		for (Instruction instruction : code) {
+			StringBuilder line = new StringBuilder(instruction.name);
+			for (int a = 0; a < instruction.args.length; a++) {
+				line.append(a == 0 ? " " : ", ");
+				if (a == 1 && instruction.target != null) {
+					line.append(lineNumbers.get(instruction.target));
+				} else {
+					line.append(instruction.args[a]);
+				}
+			}
+			if (annotated) {
+				line.append(" // Line ").append(instruction.sourceLineNumber).append(", ").append(instruction.count).append("x");
+			}
+			source.add(line.toString());
+		}
+		return source;
+	}
+
+	/**
+	 * A run with seeded registers, the keys change every keyInterval key reads (0 = no keys).
+	 */
+	private static class ScriptedRun {
+		private final CpuState cpu;
+		private final long seed;
+		private final int keyInterval;
+		private long numKeyReads;
+
+		private ScriptedRun(short[] machineCodes, long seed, int keyInterval) {
+			cpu = new CpuState(1, machineCodes);
+			CpuFarm.seedRegisters(cpu, 0, seed);
+			this.seed = seed;
+			this.keyInterval = keyInterval;
+		}
+
+		private boolean isRunning(long cycles) {
+			return !cpu.isHalted(0) && cpu.getCycles(0) < cycles;
+		}
+
+		private void step() {
+			int instruction = cpu.getInstruction(0, cpu.getPc(0));
+			if (keyInterval != 0 && isMemoryAccess(instruction, 0b0000)) {
+				int address = cpu.getRegisterValue(0, (instruction >> 4) & 0x7) & 0xff;
+				if (address >= CpuState.KEY_W_ADDR && address <= CpuState.KEY_E_ADDR) {
+					if (numKeyReads % keyInterval == 0) {
+						cpu.setKeys(0, CpuFarm.getKeys(seed, numKeyReads, keyInterval));
+					}
+					numKeyReads++;
+				}
+			}
+			cpu.step(0);
+		}
+	}
+
+	private static class RecordedRun {
+		private final List<long[]> writes;
+		private final boolean isHalted;
+
+		private RecordedRun(List<long[]> writes, boolean isHalted) {
+			this.writes = writes;
+			this.isHalted = isHalted;
+		}
+	}
+
+	private static class Candidate {
+		private final String description;
+		private final boolean isLoop;
+		private final long savedCycles;
+		private final int addedWords;
+		/**
+		 * applies the optimization and returns its report
+		 */
+		private final Supplier<String> apply;
+
+		private Candidate(String description, boolean isLoop, long savedCycles, int addedWords, Supplier<String> apply) {
+			this.description = description;
+			this.isLoop = isLoop;
+			this.savedCycles = savedCycles;
+			this.addedWords = addedWords;
+			this.apply = apply;
+		}
+	}
+
+	private static class Instruction {
+		private String name;
+		private final String[] args;
+		private final int sourceLineNumber;
+		/**
+		 * the instruction whose address la loads
+		 */
+		private Instruction target;
+		private long count;
+		/**
+		 * how often the branch jumped
+		 */
+		private long taken;
+		/**
+		 * jumps that were already duplicated or unrolled
+		 */
+		private boolean isOptimized;
+
+		private Instruction(String[] parts, int sourceLineNumber) {
+			name = parts[0];
+			args = new String[parts.length - 1];
+			System.arraycopy(parts, 1, args, 0, args.length);
+			this.sourceLineNumber = sourceLineNumber;
+		}
+
+		private Instruction(Instruction original) {
+			name = original.name;
+			args = original.args.clone();
+			sourceLineNumber = original.sourceLineNumber;
+			target = original.target;
+		}
+
+		/**
+		 * @return a copy that takes over count of the executions (at most all of them) and the same share of the taken branches
+		 */
+		private Instruction split(long count) {
+			Instruction copy = new Instruction(this);
+			copy.count = Math.min(count, this.count);
+			copy.taken = this.count == 0 ? 0 : Math.round((double) taken * copy.count / this.count);
+			this.count -= copy.count;
+			this.taken -= copy.taken;
+			return copy;
+		}
+
+		private boolean isBranch() {
+			return name.equals("beq") || name.equals("bgt") || name.equals("bge");
+		}
+
+		private boolean isUnconditional() {
+			return name.equals("beq") && args[1].equals(args[2]);
+		}
+
+		private boolean isInvertible() {
+			return name.equals("bgt") || name.equals("bge");
+		}
+
+		/**
+		 * x > y becomes y >= x and the other way around
+		 */
+		private void invert() {
+			name = name.equals("bgt") ? "bge" : "bgt";
+			taken = count - taken;
+			String first = args[1];
+			args[1] = args[2];
+			args[2] = first;
+		}
+
+		/**
+		 * @return the number of the register in the given argument ("r3" or "(r3)"), or -1 if it is no register
+		 */
+		private int getRegister(int argIndex) {
+			if (argIndex >= args.length) return -1;
+			String arg = args[argIndex].replace("(", "").replace(")", "");
+			if (arg.length() != 2 || arg.charAt(0) != 'r') return -1;
+			return arg.charAt(1) - '0';
+		}
+
+		private boolean reads(int register) {
+			switch (name) {
+				case "add", "sub", "and", "or", "xor":
+					return getRegister(1) == register || getRegister(2) == register;
+				case "addi", "andi", "ori", "xori", "sb", "beq", "bgt", "bge":
+					for (int a = 0; a < args.length; a++) {
+						if (getRegister(a) == register) return true;
+					}
+					return false;
+				case "lb":
+					return getRegister(1) == register;
+				default:
+					return false;
+			}
+		}
+
+		private boolean writes(int register) {
+			switch (name) {
+				case "add", "sub", "and", "or", "xor", "addi", "andi", "ori", "xori", "li", "la", "lb":
+					return getRegister(0) == register;
+				default:
+					return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,272 @@
+package emulator_program;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs thousands of independent CPU instances of one or more compiled Programs on a work-stealing Pool.
+ * Every instance gets its own seed, which decides the initial Register contents (e.g. the Apple position
+ * in the Snake Program) and, if enabled, the scripted Key presses.
+ */
+public class CpuFarm {
+	private static final int DEFAULT_NUM_INSTANCES = 4096;
+	private static final long DEFAULT_MAX_CYCLES = 1_000_000;
+	/**
+	 * number of instances a single task runs before it stops splitting
+	 */
+	private static final int INSTANCES_PER_TASK = 16;
+	private static final int[] KEY_CHOICES = { 0, CpuState.KEY_W, CpuState.KEY_A, CpuState.KEY_S, CpuState.KEY_D };
+
+	private final List<String> romNames;
+	private final short[] roms;
+	private final int numInstances;
+	private final long maxCycles;
+	private final long seed;
+	private final int keyInterval;
+
+	private CpuFarm(List<String> romNames, short[] roms, int numInstances, long maxCycles, long seed, int keyInterval) {
+		this.romNames = romNames;
+		this.roms = roms;
+		this.numInstances = numInstances;
+		this.maxCycles = maxCycles;
+		this.seed = seed;
+		this.keyInterval = keyInterval;
+	}
+
+	public static void startFarm(String[] args) {
+		List<String> romNames = new ArrayList<>();
+		int numInstances = DEFAULT_NUM_INSTANCES;
+		long maxCycles = DEFAULT_MAX_CYCLES;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		long seed = 0;
+		int keyInterval = 0;
+		boolean scaling = false;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+					case "-n" -> numInstances = Integer.parseInt(args[++i]);
+					case "-c" -> maxCycles = Long.parseLong(args[++i]);
+					case "-t" -> numThreads = Integer.parseInt(args[++i]);
+					case "-s" -> seed = Long.parseLong(args[++i]);
+					case "-k" -> keyInterval = Integer.parseInt(args[++i]);
+					case "--scaling" -> scaling = true;
+					default -> romNames.add(args[i]);
+				}
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			System.out.println("Could not parse the Arguments!");
+			printUsage();
+			return;
+		}
+
+		if (romNames.isEmpty() || numInstances <= 0 || maxCycles <= 0 || numThreads <= 0 || keyInterval < 0) {
+			printUsage();
+			return;
+		}
+
+		short[] roms = new short[romNames.size() * CpuState.ROM_SIZE];
+		for (int r = 0; r < romNames.size(); r++) {
+			try {
+				short[] rom = CpuState.readRom(Paths.get(romNames.get(r)));
+				System.arraycopy(rom, 0, roms, r * CpuState.ROM_SIZE, CpuState.ROM_SIZE);
+			} catch (IOException e) {
+				System.out.println("An Error occurred while reading \"" + romNames.get(r) + "\": " + e.getMessage());
+				return;
+			}
+		}
+
+		CpuFarm farm = new CpuFarm(romNames, roms, numInstances, maxCycles, seed, keyInterval);
+		if (scaling) {
+			farm.runScaling(numThreads);
+		} else {
+			CpuState state = farm.createState();
+			farm.run(state, numThreads);
+			farm.printResults(state);
+		}
+	}
+
+	private static void printUsage() {
+		System.out.println("Usage: java FarmMain <compiled-program.txt>... [-n instances] [-c max cycles]"
+		+ " [-t threads] [-s seed] [-k key interval in cycles, 0 = no keys] [--scaling]");
+	}
+
+	private CpuState createState() {
+		CpuState state = new CpuState(numInstances, roms);
+		int numRoms = romNames.size();
+		for (int i = 0; i < numInstances; i++) {
+			state.setRomIndex(i, i % numRoms);
+			seedRegisters(state, i, seed + i);
+		}
+		return state;
+	}
+
+	/**
+	 * Runs all instances with the given number of Threads and prints the throughput.
+	 *
+	 * @return the time in nanoseconds the instances ran (without setting up the state and the pool)
+	 */
+	private long run(CpuState state, int numThreads) {
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		long startTime = System.nanoTime();
+		pool.invoke(new RunTask(state, 0, numInstances));
+		long duration = System.nanoTime() - startTime;
+		pool.shutdown();
+
+		long totalCycles = 0;
+		for (int i = 0; i < numInstances; i++) {
+			totalCycles += state.getCycles(i);
+		}
+		double seconds = duration / 1e9;
+		System.out.printf("%d Threads: %d Instances, %d Cycles in %.3f s (%.1f M Cycles/s)%n",
+		numThreads, numInstances, totalCycles, seconds, totalCycles / seconds / 1e6);
+		return duration;
+	}
+
+	/**
+	 * Runs the same farm with 1, 2, 4, ... Threads up to maxThreads, so the scaling can be compared.
+	 */
+	private void runScaling(int maxThreads) {
+		// warm up, so the first measurement isn't dominated by the JIT
+		run(createState(), maxThreads);
+		System.out.println();
+
+		long singleThreadTime = 0;
+		for (int threads = 1; ; threads = Math.min(threads * 2, maxThreads)) {
+			long time = run(createState(), threads);
+			if (threads == 1) {
+				singleThreadTime = time;
+			}
+			double speedup = (double) singleThreadTime / time;
+			System.out.printf("    Speedup: %.2f, Efficiency: %.0f%%%n", speedup, 100 * speedup / threads);
+			if (threads == maxThreads) break;
+		}
+	}
+
+	private void printResults(CpuState state) {
+		for (int r = 0; r < romNames.size(); r++) {
+			int instances = 0;
+			int numHalted = 0;
+			long minCycles = Long.MAX_VALUE;
+			long maxHaltCycles = 0;
+			long sumCycles = 0;
+			HashSet<Long> ramHashes = new HashSet<>();
+			HashSet<Long> screenHashes = new HashSet<>();
+			HashMap<Integer, Integer> numberDisplays = new HashMap<>();
+
+			for (int i = 0; i < numInstances; i++) {
+				if (state.getRomIndex(i) != r) continue;
+				instances++;
+				if (state.isHalted(i)) {
+					long cycles = state.getCycles(i);
+					numHalted++;
+					minCycles = Math.min(minCycles, cycles);
+					maxHaltCycles = Math.max(maxHaltCycles, cycles);
+					sumCycles += cycles;
+				}
+				ramHashes.add(state.hashRam(i));
+				screenHashes.add(state.hashRam(i, CpuState.SCREEN_ADDR, CpuState.SCREEN_ADDR + CpuState.SCREEN_SIZE));
+				numberDisplays.merge(state.getRam(i, CpuState.NUMBER_DISPLAY_ADDR) & 0xff, 1, Integer::sum);
+			}
+
+			System.out.println();
+			System.out.println(romNames.get(r) + ":");
+			System.out.println("    Instances:           " + instances);
+			System.out.println("    Halted:              " + numHalted + " (others stopped after " + maxCycles + " Cycles)");
+			if (numHalted > 0) {
+				System.out.println("    Cycles to Halt:      min " + minCycles + ", avg " + (sumCycles / numHalted) + ", max " + maxHaltCycles);
+			}
+			System.out.println("    Distinct final RAM:  " + ramHashes.size());
+			System.out.println("    Distinct Screens:    " + screenHashes.size());
+			System.out.println("    Number Display:      " + formatHistogram(numberDisplays));
+		}
+	}
+
+	private static String formatHistogram(Map<Integer, Integer> histogram) {
+		StringBuilder result = new StringBuilder();
+		histogram.entrySet().stream()
+		.sorted((a, b) -> b.getValue() - a.getValue())
+		.limit(8)
+		.forEach(e -> result.append(e.getKey()).append(" (").append(e.getValue()).append("x) "));
+		if (histogram.size() > 8) {
+			result.append("...");
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Sets r1 to r7 like for the instance with the given seed (seed + index of the instance).
+	 */
+	public static void seedRegisters(CpuState state, int i, long instanceSeed) {
+		long value = mix(instanceSeed);
+		for (int register = 1; register < CpuState.NUM_REGISTERS; register++) {
+			value = mix(value);
+			state.setRegisterValue(i, register, (byte) value);
+		}
+	}
+
+	/**
+	 * @return the Keys that the instance with the given seed presses at time (in Cycles for the farm),
+	 * they change every keyInterval
+	 */
+	public static int getKeys(long instanceSeed, long time, int keyInterval) {
+		int choice = (int) Math.floorMod(mix(mix(~instanceSeed) + time / keyInterval), (long) KEY_CHOICES.length);
+		return KEY_CHOICES[choice];
+	}
+
+	/**
+	 * SplitMix64 finalizer, used to derive independent pseudo random values from the seed.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private class RunTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final CpuState state;
+		private final int from;
+		private final int to;
+
+		private RunTask(CpuState state, int from, int to) {
+			this.state = state;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > INSTANCES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RunTask(state, from, middle), new RunTask(state, middle, to));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				if (keyInterval == 0) {
+					state.run(i, maxCycles);
+				} else {
+					runWithKeys(i);
+				}
+			}
+		}
+
+		private void runWithKeys(int i) {
+			while (!state.isHalted(i) && state.getCycles(i) < maxCycles) {
+				long cycles = state.getCycles(i);
+				if (cycles % keyInterval == 0) {
+					state.setKeys(i, getKeys(seed + i, cycles, keyInterval));
+				}
+				state.step(i);
+			}
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package emulator_program;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * State of any number of independent CPU instances, kept as struct-of-arrays primitive buffers.
+ * Instance i owns the registers [i * 8, i * 8 + 8) and the RAM [i * 256, i * 256 + 256).
+ * See "Data_and_Instruction_Set.txt" for the emulated instruction set and memory layout.
+ */
+public class CpuState {
+	public static final int NUM_REGISTERS = 8;
+	public static final int RAM_SIZE = 256;
+	public static final int ROM_SIZE = 256;
+
+	public static final int KEY_W_ADDR = 0xD9;
+	public static final int KEY_E_ADDR = 0xDD;
+	public static final int NUMBER_DISPLAY_ADDR = 0xDE;
+	public static final int REFRESH_ADDR = 0xDF;
+	public static final int SCREEN_ADDR = 0xE0;
+	public static final int SCREEN_SIZE = 32;
+
+	public static final int KEY_W = 0b00001;
+	public static final int KEY_A = 0b00010;
+	public static final int KEY_S = 0b00100;
+	public static final int KEY_D = 0b01000;
+	public static final int KEY_E = 0b10000;
+
+	public final int numInstances;
+
+	/**
+	 * all ROMs back to back, each ROM_SIZE Instructions long
+	 */
+	private final short[] roms;
+	private final int[] romIndex;
+
+	private final byte[] registers;
+	private final int[] pc;
+	private final byte[] ram;
+	private final byte[] keys;
+	private final long[] cycles;
+	private final boolean[] halted;
+
+	public CpuState(int numInstances, short[] roms) {
+		this.numInstances = numInstances;
+		this.roms = roms;
+		romIndex = new int[numInstances];
+		registers = new byte[numInstances * NUM_REGISTERS];
+		pc = new int[numInstances];
+		ram = new byte[numInstances * RAM_SIZE];
+		keys = new byte[numInstances];
+		cycles = new long[numInstances];
+		halted = new boolean[numInstances];
+	}
+
+	/**
+	 * Reads a compiled Program as written by the Compiler (one 16 Bit binary Instruction per Line).
+	 */
+	public static short[] readRom(Path path) throws IOException {
+		List<String> lines = Files.readAllLines(path);
+		short[] rom = new short[ROM_SIZE];
+		int counter = 0;
+		for (String line : lines) {
+			line = line.trim();
+			if (line.isEmpty()) continue;
+			if (counter >= ROM_SIZE) {
+				throw new IOException("Program is too long to fit in " + ROM_SIZE + " Instructions!");
+			}
+			if (line.length() != 16) {
+				throw new IOException("Invalid Instruction \"" + line + "\" in Line " + (counter + 1) + "!");
+			}
+			try {
+				rom[counter] = (short) Integer.parseInt(line, 2);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid Instruction \"" + line + "\" in Line " + (counter + 1) + "!");
+			}
+			counter++;
+		}
+		return rom;
+	}
+
+	/**
+	 * Executes a single Instruction (one Clock Cycle) of the given instance.
+	 * A taken Branch to itself can never be left again, so it halts the instance.
+	 */
+	public void step(int i) {
+		if (halted[i]) return;
+
+		int currentPc = pc[i];
+		int instruction = roms[romIndex[i] * ROM_SIZE + currentPc];
+		int opcode = (instruction >> 12) & 0xf;
+		int rd = (instruction >> 8) & 0xf;
+		int rs1 = (instruction >> 4) & 0xf;
+		int rs2 = instruction & 0xf;
+		int immediate = (byte) instruction;
+		int regBase = i * NUM_REGISTERS;
+		int nextPc = (currentPc + 1) & 0xff;
+
+		switch (opcode) {
+			case 0b0000 -> setRegister(regBase, rd, getRegister(regBase, rs1) + getRegister(regBase, rs2));
+			case 0b0001 -> setRegister(regBase, rd, getRegister(regBase, rs1) - getRegister(regBase, rs2));
+			case 0b0111 -> setRegister(regBase, rd, getRegister(regBase, rs1) & getRegister(regBase, rs2));
+			case 0b0110 -> setRegister(regBase, rd, getRegister(regBase, rs1) | getRegister(regBase, rs2));
+			case 0b0100 -> setRegister(regBase, rd, getRegister(regBase, rs1) ^ getRegister(regBase, rs2));
+			case 0b1000 -> setRegister(regBase, rd, getRegister(regBase, rd) + immediate);
+			case 0b1111 -> setRegister(regBase, rd, getRegister(regBase, rd) & immediate);
+			case 0b1110 -> setRegister(regBase, rd, getRegister(regBase, rd) | immediate);
+			case 0b1100 -> setRegister(regBase, rd, getRegister(regBase, rd) ^ immediate);
+			case 0b1010 -> setRegister(regBase, rd, immediate);
+			case 0b0101 -> {
+				int address = getRegister(regBase, rs1) & 0xff;
+				if (rs2 == 0b0000) {
+					setRegister(regBase, rd, readMemory(i, address));
+				} else if (rs2 == 0b0001) {
+					writeMemory(i, address, getRegister(regBase, rd));
+				}
+			}
+			case 0b1011, 0b1101, 0b1001 -> {
+				int difference = (byte) (getRegister(regBase, rs1) - getRegister(regBase, rs2));
+				boolean taken = switch (opcode) {
+					case 0b1011 -> difference == 0;
+					case 0b1101 -> difference > 0;
+					default -> difference >= 0;
+				};
+				if (taken) {
+					nextPc = getRegister(regBase, rd) & 0xff;
+					if (nextPc == currentPc) {
+						halted[i] = true;
+					}
+				}
+			}
+			default -> {
+				// unused opcodes behave like a NOP
+			}
+		}
+
+		pc[i] = nextPc;
+		cycles[i]++;
+	}
+
+	/**
+	 * Steps the instance until it halts or has run for maxCycles in total.
+	 */
+	public void run(int i, long maxCycles) {
+		while (!halted[i] && cycles[i] < maxCycles) {
+			step(i);
+		}
+	}
+
+	private int getRegister(int regBase, int register) {
+		return registers[regBase + (register & 0x7)];
+	}
+
+	private void setRegister(int regBase, int register, int value) {
+		register &= 0x7;
+		if (register != 0) {
+			registers[regBase + register] = (byte) value;
+		}
+	}
+
+	private int readMemory(int i, int address) {
+		if (address >= KEY_W_ADDR && address <= KEY_E_ADDR) {
+			return (keys[i] >> (address - KEY_W_ADDR)) & 1;
+		}
+		return ram[i * RAM_SIZE + address];
+	}
+
+	private void writeMemory(int i, int address, int value) {
+		if (address >= KEY_W_ADDR && address <= KEY_E_ADDR) return;
+		ram[i * RAM_SIZE + address] = (byte) value;
+	}
+
+	public void setRomIndex(int i, int index) {
+		romIndex[i] = index;
+	}
+
+	public int getRomIndex(int i) {
+		return romIndex[i];
+	}
+
+	public int getPc(int i) {
+		return pc[i];
+	}
+
+	public short getInstruction(int i, int address) {
+		return roms[romIndex[i] * ROM_SIZE + (address & 0xff)];
+	}
+
+	public byte getRegisterValue(int i, int register) {
+		return registers[i * NUM_REGISTERS + register];
+	}
+
+	public void setRegisterValue(int i, int register, byte value) {
+		if (register != 0) {
+			registers[i * NUM_REGISTERS + register] = value;
+		}
+	}
+
+	public byte getRam(int i, int address) {
+		return ram[i * RAM_SIZE + address];
+	}
+
+	public void setKeys(int i, int keyMask) {
+		keys[i] = (byte) keyMask;
+	}
+
+	public long getCycles(int i) {
+		return cycles[i];
+	}
+
+	public boolean isHalted(int i) {
+		return halted[i];
+	}
+
+	/**
+	 * FNV-1a hash over the whole RAM of the instance.
+	 */
+	public long hashRam(int i) {
+		return hashRam(i, 0, RAM_SIZE);
+	}
+
+	public long hashRam(int i, int from, int to) {
+		long hash = 0xcbf29ce484222325L;
+		int base = i * RAM_SIZE;
+		for (int address = from; address < to; address++) {
+			hash ^= ram[base + address] & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,292 @@
+package emulator_program;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Runs a compiled Program without the Logic Sim and captures the Pixel Display (0xE0 to 0xFF) and the Number Display (0xDE)
+ * in every Cycle in which the Display refreshes, i.e. Bit zero of 0xDF is set.
+ *
+ * Only Frames that differ from the previous Frame are saved, as the XOR with it:
+ * the file starts with MAGIC and VERSION, then every Frame is appended as
+ * varint Cycles since the previous saved Frame, varint identical Refreshes in between, the Number Display Byte,
+ * a 32 Bit mask of the changed Screen Bytes and the XOR of every changed Screen Byte.
+ * If the capture ends with identical Refreshes, a trailer record at the last Refresh follows with an empty mask
+ * and the unchanged Number Display, so the file keeps every Refresh.
+ */
+public class DisplayCapture {
+	public static final byte[] MAGIC = { 'L', 'S', 'D', 'C' };
+	public static final int VERSION = 1;
+
+	/**
+	 * see "Data_and_Instruction_Set.txt"
+	 */
+	private static final double DEFAULT_CLOCK_HZ = 120;
+	private static final long DEFAULT_MAX_CYCLES = 100_000;
+	private static final String DEFAULT_OUTPUT_NAME = "out/display.bin";
+
+	private final CpuState state;
+	private final DataOutputStream output;
+	private final byte[] screen = new byte[CpuState.SCREEN_SIZE];
+	private final byte[] previousScreen = new byte[CpuState.SCREEN_SIZE];
+	private int previousNumber;
+
+	private long numRefreshes;
+	private long numFrames;
+	private long lastRefreshCycle = -1;
+	private long lastFrameCycle;
+	private long skippedRefreshes;
+	private final Interval refreshIntervals = new Interval();
+	private final Interval frameIntervals = new Interval();
+
+	private DisplayCapture(CpuState state, DataOutputStream output) {
+		this.state = state;
+		this.output = output;
+	}
+
+	public static void startCapture(String[] args) {
+		String romName = null;
+		String outputName = DEFAULT_OUTPUT_NAME;
+		String dumpName = null;
+		long maxCycles = DEFAULT_MAX_CYCLES;
+		double clockHz = DEFAULT_CLOCK_HZ;
+		long seed = 0;
+		int keyInterval = 0;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+					case "-c" -> maxCycles = Long.parseLong(args[++i]);
+					case "-o" -> outputName = args[++i];
+					case "-f" -> clockHz = Double.parseDouble(args[++i]);
+					case "-s" -> seed = Long.parseLong(args[++i]);
+					case "-k" -> keyInterval = Integer.parseInt(args[++i]);
+					case "--dump" -> dumpName = args[++i];
+					default -> romName = args[i];
+				}
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			System.out.println("Could not parse the Arguments!");
+			printUsage();
+			return;
+		}
+
+		if (dumpName != null) {
+			dump(Paths.get(dumpName));
+			return;
+		}
+		if (romName == null || maxCycles <= 0 || clockHz <= 0 || keyInterval < 0) {
+			printUsage();
+			return;
+		}
+
+		short[] rom;
+		try {
+			rom = CpuState.readRom(Paths.get(romName));
+		} catch (IOException e) {
+			System.out.println("An Error occurred while reading \"" + romName + "\": " + e.getMessage());
+			return;
+		}
+
+		CpuState state = new CpuState(1, rom);
+		CpuFarm.seedRegisters(state, 0, seed);
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(outputName))))) {
+			DisplayCapture capture = new DisplayCapture(state, output);
+			output.write(MAGIC);
+			output.write(VERSION);
+			capture.run(maxCycles, seed, keyInterval);
+			output.flush();
+			capture.printResults(romName, outputName, Files.size(Paths.get(outputName)), clockHz);
+		} catch (IOException e) {
+			System.out.println("An Error occurred while writing \"" + outputName + "\": " + e.getMessage());
+		}
+	}
+
+	private static void printUsage() {
+		System.out.println("Usage: java DisplayMain <compiled-program.txt> [-c max cycles] [-o capture file] [-f clock in Hz]"
+		+ " [-s seed] [-k key interval in cycles, 0 = no keys]");
+		System.out.println("   or: java DisplayMain --dump <capture file>");
+	}
+
+	private void run(long maxCycles, long seed, int keyInterval) throws IOException {
+		while (!state.isHalted(0) && state.getCycles(0) < maxCycles) {
+			long cycles = state.getCycles(0);
+			if (keyInterval != 0 && cycles % keyInterval == 0) {
+				state.setKeys(0, CpuFarm.getKeys(seed, cycles, keyInterval));
+			}
+			state.step(0);
+			if ((state.getRam(0, CpuState.REFRESH_ADDR) & 1) != 0) {
+				refresh(state.getCycles(0));
+			}
+		}
+		if (skippedRefreshes > 0) {
+			writeVarint(lastRefreshCycle - lastFrameCycle);
+			writeVarint(skippedRefreshes);
+			output.write(previousNumber);
+			output.writeInt(0);
+		}
+	}
+
+	/**
+	 * The Display refreshes in the Cycle after Bit zero of 0xDF is set, so it shows the RAM as it is after cycle.
+	 */
+	private void refresh(long cycle) throws IOException {
+		numRefreshes++;
+		if (lastRefreshCycle >= 0) {
+			refreshIntervals.add(cycle - lastRefreshCycle);
+		}
+		lastRefreshCycle = cycle;
+
+		int mask = 0;
+		for (int i = 0; i < CpuState.SCREEN_SIZE; i++) {
+			screen[i] = state.getRam(0, CpuState.SCREEN_ADDR + i);
+			if (screen[i] != previousScreen[i]) {
+				mask |= 1 << i;
+			}
+		}
+		int number = state.getRam(0, CpuState.NUMBER_DISPLAY_ADDR) & 0xff;
+		if (mask == 0 && number == previousNumber && numFrames > 0) {
+			skippedRefreshes++;
+			return;
+		}
+
+		writeVarint(cycle - lastFrameCycle);
+		writeVarint(skippedRefreshes);
+		output.write(number);
+		output.writeInt(mask);
+		for (int i = 0; i < CpuState.SCREEN_SIZE; i++) {
+			if ((mask & (1 << i)) != 0) {
+				output.write(screen[i] ^ previousScreen[i]);
+			}
+		}
+
+		if (numFrames > 0) {
+			frameIntervals.add(cycle - lastFrameCycle);
+		}
+		numFrames++;
+		lastFrameCycle = cycle;
+		skippedRefreshes = 0;
+		previousNumber = number;
+		System.arraycopy(screen, 0, previousScreen, 0, CpuState.SCREEN_SIZE);
+	}
+
+	private void writeVarint(long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			output.write((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		output.write((int) value);
+	}
+
+	private void printResults(String romName, String outputName, long fileSize, double clockHz) {
+		long cycles = state.getCycles(0);
+		long wastedRefreshes = numRefreshes - numFrames;
+		System.out.println(romName + ": " + cycles + " Cycles" + (state.isHalted(0) ? " (halted)" : "") + ", " + numRefreshes
+		+ " Refreshes, " + numFrames + " changed Frames saved in \"" + outputName + "\" (" + fileSize + " Bytes)");
+		if (numRefreshes == 0) {
+			System.out.println("The Program never refreshed the Display.");
+			return;
+		}
+
+		double seconds = cycles / clockHz;
+		System.out.printf("Refreshes showing the same Frame again (wasted Redraws): %d (%.1f%%)%n", wastedRefreshes,
+		100.0 * wastedRefreshes / numRefreshes);
+		System.out.printf("At %.0f Hz: %.2f Refreshes and %.2f changed Frames per Second%n", clockHz, numRefreshes / seconds,
+		numFrames / seconds);
+		System.out.println("Cycles from Refresh to Refresh: " + refreshIntervals);
+		System.out.println("Cycles from changed Frame to changed Frame: " + frameIntervals);
+	}
+
+	/**
+	 * Prints every Frame of a capture file as the Cycle, the Number Display and the 32 Screen Bytes in hex.
+	 * Every record after the first one changes the Frame, except for the trailer.
+	 */
+	private static void dump(Path path) {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			byte[] magic = new byte[MAGIC.length];
+			input.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC) || input.read() != VERSION) {
+				System.out.println("\"" + path + "\" is not a Display capture (or from another version)!");
+				return;
+			}
+
+			byte[] screen = new byte[CpuState.SCREEN_SIZE];
+			long cycle = 0;
+			int numFrames = 0;
+			int previousNumber = 0;
+			long identicalRefreshes = 0;
+			while (true) {
+				long cycleDelta;
+				try {
+					cycleDelta = readVarint(input);
+				} catch (EOFException e) {
+					break;
+				}
+				cycle += cycleDelta;
+				long skippedRefreshes = readVarint(input);
+				int number = input.readUnsignedByte();
+				int mask = input.readInt();
+				identicalRefreshes += skippedRefreshes;
+				if (numFrames > 0 && mask == 0 && number == previousNumber) {
+					System.out.println(String.format("Cycle %8d (+%d identical) End of the capture", cycle, skippedRefreshes));
+					continue;
+				}
+				previousNumber = number;
+				for (int i = 0; i < CpuState.SCREEN_SIZE; i++) {
+					if ((mask & (1 << i)) != 0) {
+						screen[i] ^= input.readByte();
+					}
+				}
+
+				StringBuilder line = new StringBuilder();
+				line.append(String.format("Cycle %8d (+%d identical) Number %3d Screen", cycle, skippedRefreshes, number));
+				for (int i = 0; i < CpuState.SCREEN_SIZE; i++) {
+					line.append(i % 2 == 0 ? " " : "").append(String.format("%02x", screen[i] & 0xff));
+				}
+				System.out.println(line);
+				numFrames++;
+			}
+			System.out.println(numFrames + " Frames, " + (numFrames + identicalRefreshes) + " Refreshes, " + identicalRefreshes
+			+ " Refreshes showing the same Frame again (wasted Redraws)");
+		} catch (IOException e) {
+			System.out.println("An Error occurred while reading \"" + path + "\": " + e.getMessage());
+		}
+	}
+
+	private static long readVarint(DataInputStream input) throws IOException {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = input.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+	}
+
+	private static class Interval {
+		private long count;
+		private long total;
+		private long min = Long.MAX_VALUE;
+		private long max;
+
+		private void add(long cycles) {
+			count++;
+			total += cycles;
+			min = Math.min(min, cycles);
+			max = Math.max(max, cycles);
+		}
+
+		@Override
+		public String toString() {
+			if (count == 0) return "-";
+			return String.format("min %d, avg %.1f, max %d", min, (double) total / count, max);
+		}
+	}
+}
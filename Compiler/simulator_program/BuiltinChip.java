@@ -0,0 +1,70 @@
+package simulator_program;
+
+/**
+ * The chips that are built into the Logic Sim and therefore have no chip file.
+ * Their pins have the IDs 0, 1, 2, ... with the inputs first.
+ */
+public enum BuiltinChip {
+	NAND("NAND", 2, 1, 1, 1),
+	THREE_STATE_BUFFER("3-STATE BUFFER", 2, 1, 1, 1),
+	CLOCK("CLOCK", 0, 1),
+	KEY("KEY", 0, 1),
+	MERGE_1_TO_4("1-4BIT", 4, 1, 1, 1, 1, 4),
+	MERGE_1_TO_8("1-8BIT", 8, 1, 1, 1, 1, 1, 1, 1, 1, 8),
+	MERGE_4_TO_8("4-8BIT", 2, 4, 4, 8),
+	SPLIT_4_TO_1("4-1BIT", 1, 4, 1, 1, 1, 1),
+	SPLIT_8_TO_1("8-1BIT", 1, 8, 1, 1, 1, 1, 1, 1, 1, 1),
+	SPLIT_8_TO_4("8-4BIT", 1, 8, 4, 4),
+	BUS_1("BUS-1", 1, 1, 1),
+	BUS_4("BUS-4", 1, 4, 4),
+	BUS_8("BUS-8", 1, 8, 8),
+	BUS_TERMINUS_1("BUS-TERMINUS-1", 1, 1, 1),
+	BUS_TERMINUS_4("BUS-TERMINUS-4", 1, 4, 4),
+	BUS_TERMINUS_8("BUS-TERMINUS-8", 1, 8, 8),
+	ROM("ROM 256×16", 1, 8, 8, 8),
+	DOT_DISPLAY("DOT DISPLAY", 6, 8, 1, 1, 1, 1, 1, 1),
+	SEVEN_SEGMENT("7-SEGMENT", 8, 1, 1, 1, 1, 1, 1, 1, 1),
+	/**
+	 * not part of the Logic Sim: combines several Wires that drive the same pin (e.g. 3-State Buffers on a Bus)
+	 */
+	RESOLVE(null, 0);
+
+	public final String name;
+	public final int numInputs;
+	public final int[] pinWidths;
+
+	private BuiltinChip(String name, int numInputs, int... pinWidths) {
+		this.name = name;
+		this.numInputs = numInputs;
+		this.pinWidths = pinWidths;
+	}
+
+	public boolean isBus() {
+		return this == BUS_1 || this == BUS_4 || this == BUS_8;
+	}
+
+	/**
+	 * A Bus also drives the output of its Terminus (pin 3), the Terminus itself drives nothing.
+	 */
+	public boolean isOutputPin(int pin) {
+		if (this == RESOLVE) {
+			return pin == 0;
+		}
+		if (isBus()) {
+			return pin == 1 || pin == 3;
+		}
+		if (this == BUS_TERMINUS_1 || this == BUS_TERMINUS_4 || this == BUS_TERMINUS_8) {
+			return false;
+		}
+		return pin >= numInputs;
+	}
+
+	public static BuiltinChip getBuiltinChipFromString(String s) {
+		for (BuiltinChip chip : values()) {
+			if (chip.name != null && chip.name.equals(s)) {
+				return chip;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,390 @@
+package simulator_program;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import common_program.JsonReader;
+
+/**
+ * A chip of a Logic Sim project, flattened down to the builtin chips.
+ * Every pin is a slot, pins that are connected by a single Wire share the same slot.
+ */
+public class Netlist {
+	public final int numSlots;
+	public final int[] slotWidths;
+
+	public final BuiltinChip[] chipTypes;
+	/**
+	 * the slots of chip c are pins[pinStarts[c]] to pins[pinStarts[c + 1] - 1], in the order of the pin IDs
+	 */
+	public final int[] pinStarts;
+	public final int[] pins;
+	/**
+	 * the internal state of chip c starts at initialState[stateStarts[c]]
+	 */
+	public final int[] stateStarts;
+	public final int[] initialState;
+	/**
+	 * the chips reading slot s are fanout[fanoutStarts[s]] to fanout[fanoutStarts[s + 1] - 1]
+	 */
+	public final int[] fanoutStarts;
+	public final int[] fanout;
+
+	/**
+	 * all pins of custom chips, which can be traced
+	 */
+	public final List<Signal> signals;
+	/**
+	 * input pins of the top chip
+	 */
+	public final Map<String, Integer> inputSlots;
+
+	public static class Signal {
+		public final String path;
+		public final String chipPath;
+		public final int depth;
+		public final int slot;
+		public final int width;
+
+		private Signal(String path, String chipPath, int depth, int slot, int width) {
+			this.path = path;
+			this.chipPath = chipPath;
+			this.depth = depth;
+			this.slot = slot;
+			this.width = width;
+		}
+	}
+
+	private Netlist(Builder builder) {
+		int[] representatives = new int[builder.slotWidths.size];
+		int numRepresentatives = 0;
+		int[] compactSlots = new int[builder.slotWidths.size];
+		for (int slot = 0; slot < representatives.length; slot++) {
+			representatives[slot] = builder.find(slot);
+		}
+		Arrays.fill(compactSlots, -1);
+		for (int slot = 0; slot < representatives.length; slot++) {
+			if (compactSlots[representatives[slot]] == -1) {
+				compactSlots[representatives[slot]] = numRepresentatives++;
+			}
+		}
+		numSlots = numRepresentatives;
+		slotWidths = new int[numSlots];
+		for (int slot = 0; slot < representatives.length; slot++) {
+			int compact = compactSlots[representatives[slot]];
+			slotWidths[compact] = Math.max(slotWidths[compact], builder.slotWidths.get(slot));
+		}
+
+		int numChips = builder.chipTypes.size();
+		chipTypes = builder.chipTypes.toArray(new BuiltinChip[numChips]);
+		pinStarts = new int[numChips + 1];
+		stateStarts = new int[numChips + 1];
+		pins = new int[builder.pins.size];
+		for (int c = 0; c < numChips; c++) {
+			pinStarts[c] = builder.pinStarts.get(c);
+			stateStarts[c] = builder.stateStarts.get(c);
+		}
+		pinStarts[numChips] = pins.length;
+		stateStarts[numChips] = builder.state.size;
+		for (int p = 0; p < pins.length; p++) {
+			pins[p] = compactSlots[representatives[builder.pins.get(p)]];
+		}
+		initialState = Arrays.copyOf(builder.state.data, builder.state.size);
+
+		fanoutStarts = new int[numSlots + 1];
+		for (int c = 0; c < numChips; c++) {
+			for (int p = pinStarts[c]; p < pinStarts[c + 1]; p++) {
+				if (!chipTypes[c].isOutputPin(p - pinStarts[c])) {
+					fanoutStarts[pins[p] + 1]++;
+				}
+			}
+		}
+		for (int slot = 0; slot < numSlots; slot++) {
+			fanoutStarts[slot + 1] += fanoutStarts[slot];
+		}
+		fanout = new int[fanoutStarts[numSlots]];
+		int[] fanoutPositions = Arrays.copyOf(fanoutStarts, numSlots);
+		for (int c = 0; c < numChips; c++) {
+			for (int p = pinStarts[c]; p < pinStarts[c + 1]; p++) {
+				if (!chipTypes[c].isOutputPin(p - pinStarts[c])) {
+					fanout[fanoutPositions[pins[p]]++] = c;
+				}
+			}
+		}
+
+		signals = new ArrayList<>();
+		for (Signal signal : builder.signals) {
+			signals.add(new Signal(signal.path, signal.chipPath, signal.depth,
+			compactSlots[representatives[signal.slot]], signal.width));
+		}
+		inputSlots = new HashMap<>();
+		for (Map.Entry<String, Integer> entry : builder.inputSlots.entrySet()) {
+			inputSlots.put(entry.getKey(), compactSlots[representatives[entry.getValue()]]);
+		}
+	}
+
+	public int getNumChips() {
+		return chipTypes.length;
+	}
+
+	/**
+	 * Loads the chip with the given name from "projectDirectory/Chips" and flattens it.
+	 */
+	public static Netlist load(Path projectDirectory, String topChipName) throws IOException {
+		Builder builder = new Builder(projectDirectory.resolve("Chips"));
+		builder.instantiateTop(topChipName);
+		builder.connectWires();
+		return new Netlist(builder);
+	}
+
+	private static class IntList {
+		private int[] data = new int[64];
+		private int size = 0;
+
+		private void add(int value) {
+			if (size == data.length) {
+				data = Arrays.copyOf(data, size * 2);
+			}
+			data[size++] = value;
+		}
+
+		private int get(int index) {
+			return data[index];
+		}
+
+		private void set(int index, int value) {
+			data[index] = value;
+		}
+	}
+
+	private static class Builder {
+		private final Path chipDirectory;
+		private final HashMap<String, Map<String, Object>> definitions = new HashMap<>();
+
+		private final IntList slotWidths = new IntList();
+		private final IntList parents = new IntList();
+		private final IntList wireSources = new IntList();
+		private final IntList wireTargets = new IntList();
+
+		private final List<BuiltinChip> chipTypes = new ArrayList<>();
+		private final IntList pinStarts = new IntList();
+		private final IntList pins = new IntList();
+		private final IntList stateStarts = new IntList();
+		private final IntList state = new IntList();
+
+		private final List<Signal> signals = new ArrayList<>();
+		private final Map<String, Integer> inputSlots = new HashMap<>();
+
+		private Builder(Path chipDirectory) {
+			this.chipDirectory = chipDirectory;
+		}
+
+		private void instantiateTop(String name) throws IOException {
+			Map<String, Object> definition = getDefinition(name);
+			if (definition == null) {
+				throw new IOException("Could not find the Chip \"" + name + "\"!");
+			}
+			Map<Long, Integer> topPins = instantiateCustom(definition, "", 0);
+			for (Object pin : getList(definition, "InputPins")) {
+				Map<?, ?> pinMap = (Map<?, ?>) pin;
+				inputSlots.put((String) pinMap.get("Name"), topPins.get(getLong(pinMap, "ID")));
+			}
+		}
+
+		/**
+		 * @return the slots of the pins of the chip by their pin ID
+		 */
+		private Map<Long, Integer> instantiateCustom(Map<String, Object> definition, String chipPath, int depth) throws IOException {
+			Map<Long, Integer> ownPins = new HashMap<>();
+			HashMap<String, Integer> usedPinNames = new HashMap<>();
+			for (String pinListName : new String[] { "InputPins", "OutputPins" }) {
+				for (Object pin : getList(definition, pinListName)) {
+					Map<?, ?> pinMap = (Map<?, ?>) pin;
+					int width = (int) getLong(pinMap, "BitCount");
+					int slot = newSlot(width);
+					ownPins.put(getLong(pinMap, "ID"), slot);
+					String pinName = makeUnique(usedPinNames, (String) pinMap.get("Name"));
+					String path = chipPath.isEmpty() ? pinName : chipPath + "/" + pinName;
+					signals.add(new Signal(path, chipPath, depth, slot, width));
+				}
+			}
+
+			HashMap<Long, Map<Long, Integer>> subChipPins = new HashMap<>();
+			HashMap<Long, Integer> buses = new HashMap<>();
+			HashMap<Long, Long> busPartners = new HashMap<>();
+			HashMap<String, Integer> usedChipNames = new HashMap<>();
+			for (Object subChip : getList(definition, "SubChips")) {
+				Map<?, ?> subChipMap = (Map<?, ?>) subChip;
+				String name = (String) subChipMap.get("Name");
+				long id = getLong(subChipMap, "ID");
+				BuiltinChip type = BuiltinChip.getBuiltinChipFromString(name);
+				if (type == null) {
+					Map<String, Object> subDefinition = getDefinition(name);
+					if (subDefinition == null) {
+						throw new IOException("Could not find the Chip \"" + name + "\" (used in \"" + definition.get("Name") + "\")!");
+					}
+					String label = (String) subChipMap.get("Label");
+					String childName = makeUnique(usedChipNames, label == null || label.isEmpty() ? name : label);
+					String childPath = chipPath.isEmpty() ? childName : chipPath + "/" + childName;
+					subChipPins.put(id, instantiateCustom(subDefinition, childPath, depth + 1));
+					continue;
+				}
+
+				List<?> internalData = (List<?>) subChipMap.get("InternalData");
+				int chip = addBuiltin(type, internalData);
+				Map<Long, Integer> builtinPins = new HashMap<>();
+				for (int pin = 0; pin < type.pinWidths.length; pin++) {
+					builtinPins.put((long) pin, pins.get(pinStarts.get(chip) + pin));
+				}
+				subChipPins.put(id, builtinPins);
+				if (type.isBus()) {
+					buses.put(id, chip);
+					busPartners.put(id, internalData == null ? -1 : ((Number) internalData.get(0)).longValue());
+				}
+			}
+
+			// a Bus also forwards whatever is driven into its Terminus
+			for (Map.Entry<Long, Integer> bus : buses.entrySet()) {
+				Map<Long, Integer> terminusPins = subChipPins.get(busPartners.get(bus.getKey()));
+				int pinStart = pinStarts.get(bus.getValue());
+				if (terminusPins != null) {
+					pins.set(pinStart + 2, terminusPins.get(0L));
+					pins.set(pinStart + 3, terminusPins.get(1L));
+				}
+			}
+
+			for (Object wire : getList(definition, "Wires")) {
+				Map<?, ?> wireMap = (Map<?, ?>) wire;
+				Integer source = resolvePin((Map<?, ?>) wireMap.get("SourcePinAddress"), ownPins, subChipPins);
+				Integer target = resolvePin((Map<?, ?>) wireMap.get("TargetPinAddress"), ownPins, subChipPins);
+				if (source != null && target != null) {
+					wireSources.add(source);
+					wireTargets.add(target);
+				}
+			}
+			return ownPins;
+		}
+
+		private Integer resolvePin(Map<?, ?> address, Map<Long, Integer> ownPins, Map<Long, Map<Long, Integer>> subChipPins) {
+			long owner = getLong(address, "PinOwnerID");
+			if (ownPins.containsKey(owner)) {
+				return ownPins.get(owner);
+			}
+			Map<Long, Integer> ownerPins = subChipPins.get(owner);
+			return ownerPins == null ? null : ownerPins.get(getLong(address, "PinID"));
+		}
+
+		private int addBuiltin(BuiltinChip type, List<?> internalData) {
+			int chip = chipTypes.size();
+			chipTypes.add(type);
+			pinStarts.add(pins.size);
+			for (int width : type.pinWidths) {
+				pins.add(newSlot(width));
+			}
+			if (type.isBus()) {
+				// the in- and output of the Terminus, the Bus's own pins are used if there is none
+				pins.add(pins.get(pins.size - 2));
+				pins.add(pins.get(pins.size - 2));
+			}
+
+			stateStarts.add(state.size);
+			switch (type) {
+				case ROM -> {
+					for (int i = 0; i < 256; i++) {
+						state.add(internalData != null && i < internalData.size() ? ((Number) internalData.get(i)).intValue() : 0);
+					}
+				}
+				case KEY -> state.add(internalData != null && !internalData.isEmpty() ? ((Number) internalData.get(0)).intValue() : 0);
+				case DOT_DISPLAY -> {
+					// back buffer, displayed buffer and the last clock state
+					for (int i = 0; i < 256 * 2 + 1; i++) {
+						state.add(0);
+					}
+				}
+				default -> {
+					// stateless
+				}
+			}
+			return chip;
+		}
+
+		private int newSlot(int width) {
+			slotWidths.add(width);
+			parents.add(slotWidths.size - 1);
+			return slotWidths.size - 1;
+		}
+
+		private int find(int slot) {
+			while (parents.get(slot) != slot) {
+				parents.set(slot, parents.get(parents.get(slot)));
+				slot = parents.get(slot);
+			}
+			return slot;
+		}
+
+		/**
+		 * Merges the slots of pins that only have a single Wire going into them with the slot of the Wire's source.
+		 * Pins that are driven by more than one Wire get a RESOLVE chip instead.
+		 */
+		private void connectWires() {
+			HashMap<Integer, List<Integer>> sourcesOfTarget = new HashMap<>();
+			for (int wire = 0; wire < wireSources.size; wire++) {
+				sourcesOfTarget.computeIfAbsent(wireTargets.get(wire), k -> new ArrayList<>()).add(wireSources.get(wire));
+			}
+			for (Map.Entry<Integer, List<Integer>> entry : sourcesOfTarget.entrySet()) {
+				List<Integer> sources = entry.getValue();
+				if (sources.size() == 1) {
+					parents.set(find(entry.getKey()), find(sources.get(0)));
+					continue;
+				}
+				chipTypes.add(BuiltinChip.RESOLVE);
+				pinStarts.add(pins.size);
+				pins.add(entry.getKey());
+				for (int source : sources) {
+					pins.add(source);
+				}
+				stateStarts.add(state.size);
+			}
+		}
+
+		private Map<String, Object> getDefinition(String name) throws IOException {
+			if (definitions.containsKey(name)) {
+				return definitions.get(name);
+			}
+			Path file = chipDirectory.resolve(name + ".json");
+			Map<String, Object> definition = null;
+			if (Files.exists(file)) {
+				Object json = JsonReader.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+				if (!(json instanceof Map)) {
+					throw new IOException("Invalid Chip File \"" + file + "\"!");
+				}
+				@SuppressWarnings("unchecked")
+				Map<String, Object> map = (Map<String, Object>) json;
+				definition = map;
+			}
+			definitions.put(name, definition);
+			return definition;
+		}
+
+		private static String makeUnique(HashMap<String, Integer> usedNames, String name) {
+			int count = usedNames.merge(name, 1, Integer::sum);
+			return count == 1 ? name : name + "#" + count;
+		}
+
+		private static List<?> getList(Map<?, ?> map, String key) {
+			Object list = map.get(key);
+			return list == null ? List.of() : (List<?>) list;
+		}
+
+		private static long getLong(Map<?, ?> map, String key) {
+			return ((Number) map.get(key)).longValue();
+		}
+	}
+}
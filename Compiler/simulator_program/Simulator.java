@@ -0,0 +1,545 @@
+package simulator_program;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import common_program.JsonReader;
+
+/**
+ * Headless simulation of a Logic Sim project, for example "Der Computer".
+ * Every builtin chip has a delay of one delta cycle, which keeps the edge triggered Flip Flops of the project working,
+ * and only chips whose inputs changed are evaluated.
+ */
+public class Simulator {
+	private static final int DEFAULT_STEPS_PER_CLOCK_TICK = 10;
+	private static final int DEFAULT_TRACE_DEPTH = 2;
+	private static final int MAX_DELTA_CYCLES = 1000;
+	/**
+	 * After this many delta cycles, changes are applied immediately instead of at the end of the delta cycle.
+	 * This breaks up symmetric oscillations, e.g. of NAND latches that start with both outputs at 0.
+	 */
+	private static final int SYMMETRY_BREAKING_DELTA_CYCLES = 100;
+	/**
+	 * A chip that changes more often within one step is deferred to the next step. Like in the Logic Sim,
+	 * where every chip is processed once per step, loops of chips (e.g. the CUSTOM CLOCK) then toggle once per step.
+	 */
+	private static final int MAX_EVALUATIONS_PER_STEP = 8;
+
+	private final Netlist netlist;
+	private final int stepsPerClockTick;
+
+	private final int[] values;
+	/**
+	 * one bit per bit of the signal, like in the Logic Sim a part of a Bus can float while the rest is driven
+	 */
+	private final int[] floating;
+	private final int[] state;
+	private int keysPressed;
+	private long step;
+
+	private final int[] timeDependentChips;
+	private int[] scheduled;
+	private int[] nextScheduled;
+	private int numScheduled;
+	private final int[] scheduledEpochs;
+	private int scheduleEpoch;
+	private final int[] evaluationCounts;
+	private final long[] evaluationSteps;
+	private final int[] deferred;
+	private int numDeferred;
+	private final long[] deferredSteps;
+
+	private final int[] updateSlots;
+	private final int[] updateValues;
+	private final int[] updateFloating;
+	private int numUpdates;
+	private boolean applyImmediately;
+
+	/**
+	 * the indices of the watched signals of a slot are watchIndices[watchStarts[slot]] to watchIndices[watchStarts[slot + 1] - 1],
+	 * several signals share a slot if their pins are connected
+	 */
+	private int[] watchStarts;
+	private int[] watchIndices;
+	private long[] watchChangeEpochs;
+	private long watchEpoch;
+	private int[] changedWatches;
+	private int numChangedWatches;
+
+	public Simulator(Netlist netlist, int stepsPerClockTick) {
+		this.netlist = netlist;
+		this.stepsPerClockTick = stepsPerClockTick;
+		values = new int[netlist.numSlots];
+		floating = new int[netlist.numSlots];
+		state = netlist.initialState.clone();
+		keysPressed = 0;
+		step = 0;
+
+		int numChips = netlist.getNumChips();
+		List<Integer> clocksAndKeys = new ArrayList<>();
+		for (int chip = 0; chip < numChips; chip++) {
+			BuiltinChip type = netlist.chipTypes[chip];
+			if (type == BuiltinChip.CLOCK || type == BuiltinChip.KEY) {
+				clocksAndKeys.add(chip);
+			}
+		}
+		timeDependentChips = clocksAndKeys.stream().mapToInt(Integer::intValue).toArray();
+		scheduled = new int[numChips];
+		nextScheduled = new int[numChips];
+		scheduledEpochs = new int[numChips];
+		scheduleEpoch = 1;
+		evaluationCounts = new int[numChips];
+		evaluationSteps = new long[numChips];
+		deferred = new int[numChips];
+		deferredSteps = new long[numChips];
+		Arrays.fill(evaluationSteps, -1);
+		Arrays.fill(deferredSteps, -1);
+		updateSlots = new int[netlist.pins.length];
+		updateValues = new int[netlist.pins.length];
+		updateFloating = new int[netlist.pins.length];
+
+		// the first step has to evaluate everything once
+		for (int chip = 0; chip < numChips; chip++) {
+			schedule(chip);
+		}
+	}
+
+	public static void startSimulation(String[] args) {
+		if (args.length < 2) {
+			printUsage();
+			return;
+		}
+		Path projectDirectory = Paths.get(args[0]);
+		String topChipName = args[1];
+		long numSteps = 100_000;
+		String romName = null;
+		String resultName = "out/trace.vcd";
+		List<String> tracedPaths = new ArrayList<>();
+		int traceDepth = DEFAULT_TRACE_DEPTH;
+		String trigger = null;
+		long stepsAfterTrigger = -1;
+		long resetSteps = 0;
+		boolean trace = true;
+
+		try {
+			for (int i = 2; i < args.length; i++) {
+				switch (args[i]) {
+					case "-s" -> numSteps = Long.parseLong(args[++i]);
+					case "-r" -> romName = args[++i];
+					case "-o" -> resultName = args[++i];
+					case "-p" -> tracedPaths.add(args[++i]);
+					case "-d" -> traceDepth = Integer.parseInt(args[++i]);
+					case "-t" -> trigger = args[++i];
+					case "-a" -> stepsAfterTrigger = Long.parseLong(args[++i]);
+					case "--reset" -> resetSteps = Long.parseLong(args[++i]);
+					case "--no-trace" -> trace = false;
+					default -> {
+						System.out.println("Unknown Argument \"" + args[i] + "\"!");
+						printUsage();
+						return;
+					}
+				}
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			System.out.println("Could not parse the Arguments!");
+			printUsage();
+			return;
+		}
+
+		Netlist netlist;
+		try {
+			netlist = Netlist.load(projectDirectory, topChipName);
+		} catch (IOException e) {
+			System.out.println("An Error occurred while loading the Chip: " + e.getMessage());
+			return;
+		}
+		Simulator simulator = new Simulator(netlist, readStepsPerClockTick(projectDirectory));
+		System.out.println(topChipName + ": " + netlist.getNumChips() + " builtin Chips, " + netlist.numSlots + " Signals");
+
+		if (romName != null) {
+			try {
+				simulator.loadRom(Files.readAllLines(Paths.get(romName)));
+			} catch (IOException | NumberFormatException e) {
+				System.out.println("An Error occurred while reading the compiled Program!");
+				return;
+			}
+		}
+
+		WaveformTracer tracer = null;
+		if (trace) {
+			List<Netlist.Signal> signals = selectSignals(netlist, tracedPaths, traceDepth);
+			if (signals.isEmpty()) {
+				System.out.println("No Signals match the given Paths!");
+				return;
+			}
+			try {
+				tracer = new WaveformTracer(simulator, signals, Paths.get(resultName));
+				if (trigger != null) {
+					tracer.setTrigger(trigger, netlist.signals, stepsAfterTrigger);
+				}
+			} catch (IOException e) {
+				System.out.println("An Error occurred while creating the Trace: " + e.getMessage());
+				return;
+			}
+			System.out.println("Tracing " + signals.size() + " Signals into \"" + resultName + "\".");
+		}
+
+		Integer resetSlot = netlist.inputSlots.get("RESET");
+		long startTime = System.nanoTime();
+		for (long i = 0; i < numSteps; i++) {
+			if (resetSlot != null && i < resetSteps) {
+				simulator.setValue(resetSlot, 1);
+			} else if (resetSlot != null && i == resetSteps) {
+				simulator.setValue(resetSlot, 0);
+			}
+			simulator.step();
+			if (tracer != null) {
+				tracer.sample();
+			}
+		}
+		long duration = System.nanoTime() - startTime;
+
+		if (tracer != null) {
+			try {
+				tracer.close();
+			} catch (IOException e) {
+				System.out.println("An Error occurred while writing the Trace: " + e.getMessage());
+				return;
+			}
+			if (!tracer.hasTriggered()) {
+				System.out.println("The Trigger never fired, so nothing was recorded.");
+			}
+		}
+		double seconds = duration / 1e9;
+		System.out.printf("Simulated %d Steps in %.3f s (%.0f Steps/s).%n", numSteps, seconds, numSteps / seconds);
+	}
+
+	private static void printUsage() {
+		System.out.println("Usage: java SimulatorMain <project-folder> <chip-name> [-s steps] [-r compiled-program.txt]"
+		+ " [-o trace.vcd] [-p signal-or-chip-path]... [-d depth] [-t \"path == value\"] [-a steps after trigger]"
+		+ " [--reset steps] [--no-trace]");
+	}
+
+	private static int readStepsPerClockTick(Path projectDirectory) {
+		try {
+			Object description = JsonReader.parse(new String(
+			Files.readAllBytes(projectDirectory.resolve("ProjectDescription.json")), StandardCharsets.UTF_8));
+			Object steps = ((Map<?, ?>) description).get("Prefs_SimStepsPerClockTick");
+			if (steps instanceof Number) {
+				return Math.max(1, ((Number) steps).intValue());
+			}
+		} catch (IOException | ClassCastException e) {
+			// fall back to the default
+		}
+		return DEFAULT_STEPS_PER_CLOCK_TICK;
+	}
+
+	/**
+	 * A path selects the pin with exactly that path, or all pins of the chip with that path and of all chips inside of it.
+	 * Without any paths, all pins of chips at most depth levels below the top chip are selected.
+	 */
+	private static List<Netlist.Signal> selectSignals(Netlist netlist, List<String> paths, int depth) {
+		List<Netlist.Signal> selected = new ArrayList<>();
+		for (Netlist.Signal signal : netlist.signals) {
+			if (paths.isEmpty()) {
+				if (signal.depth <= depth) {
+					selected.add(signal);
+				}
+				continue;
+			}
+			for (String path : paths) {
+				if (signal.path.equals(path) || signal.chipPath.equals(path) || signal.chipPath.startsWith(path + "/")) {
+					selected.add(signal);
+					break;
+				}
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * Replaces the contents of every ROM with a Program compiled by the Compiler.
+	 */
+	public void loadRom(List<String> lines) {
+		int[] rom = new int[256];
+		int counter = 0;
+		for (String line : lines) {
+			line = line.trim();
+			if (line.isEmpty() || counter >= rom.length) continue;
+			rom[counter++] = Integer.parseInt(line, 2);
+		}
+		for (int chip = 0; chip < netlist.getNumChips(); chip++) {
+			if (netlist.chipTypes[chip] == BuiltinChip.ROM) {
+				System.arraycopy(rom, 0, state, netlist.stateStarts[chip], rom.length);
+			}
+		}
+	}
+
+	public void setKeysPressed(int keyMask) {
+		keysPressed = keyMask;
+	}
+
+	public void setValue(int slot, int value) {
+		if (values[slot] == value && floating[slot] == 0) return;
+		apply(slot, value, 0);
+	}
+
+	/**
+	 * Afterwards, getChangedWatches() returns the indices (into slots) of the signals that changed since the last call
+	 * of clearChangedWatches(), so that an observer does not have to compare every signal after every step.
+	 */
+	public void watch(int[] slots) {
+		watchStarts = new int[netlist.numSlots + 1];
+		for (int slot : slots) {
+			watchStarts[slot + 1]++;
+		}
+		for (int slot = 0; slot < netlist.numSlots; slot++) {
+			watchStarts[slot + 1] += watchStarts[slot];
+		}
+		watchIndices = new int[slots.length];
+		int[] next = Arrays.copyOf(watchStarts, netlist.numSlots);
+		for (int i = 0; i < slots.length; i++) {
+			watchIndices[next[slots[i]]++] = i;
+		}
+		watchChangeEpochs = new long[slots.length];
+		watchEpoch = 1;
+		changedWatches = new int[slots.length];
+	}
+
+	public int[] getChangedWatches() {
+		return changedWatches;
+	}
+
+	public int getNumChangedWatches() {
+		return numChangedWatches;
+	}
+
+	public void clearChangedWatches() {
+		numChangedWatches = 0;
+		watchEpoch++;
+	}
+
+	public int getValue(int slot) {
+		return values[slot];
+	}
+
+	/**
+	 * @return a mask of the floating bits of the signal
+	 */
+	public int getFloatingBits(int slot) {
+		return floating[slot];
+	}
+
+	public long getStep() {
+		return step;
+	}
+
+	/**
+	 * Simulates one step: the changes of the last step, the clocks and the keys are propagated with one delta cycle
+	 * per gate, until nothing changes anymore (or MAX_DELTA_CYCLES is reached, e.g. because of an oscillating loop).
+	 */
+	public void step() {
+		for (int chip : timeDependentChips) {
+			schedule(chip);
+		}
+		for (int i = 0; i < numDeferred; i++) {
+			schedule(deferred[i]);
+		}
+		numDeferred = 0;
+		for (int delta = 0; delta < MAX_DELTA_CYCLES && numScheduled > 0; delta++) {
+			int[] current = scheduled;
+			int numCurrent = numScheduled;
+			scheduled = nextScheduled;
+			nextScheduled = current;
+			numScheduled = 0;
+			scheduleEpoch++;
+
+			numUpdates = 0;
+			applyImmediately = delta >= SYMMETRY_BREAKING_DELTA_CYCLES;
+			for (int i = 0; i < numCurrent; i++) {
+				int chip = current[i];
+				if (evaluationSteps[chip] != step) {
+					evaluationSteps[chip] = step;
+					evaluationCounts[chip] = 0;
+				}
+				if (++evaluationCounts[chip] > MAX_EVALUATIONS_PER_STEP) {
+					defer(chip);
+				} else {
+					evaluate(chip);
+				}
+			}
+			for (int i = 0; i < numUpdates; i++) {
+				apply(updateSlots[i], updateValues[i], updateFloating[i]);
+			}
+		}
+		for (int i = 0; i < numScheduled; i++) {
+			defer(scheduled[i]);
+		}
+		numScheduled = 0;
+		step++;
+	}
+
+	private void defer(int chip) {
+		if (deferredSteps[chip] == step) return;
+		deferredSteps[chip] = step;
+		deferred[numDeferred++] = chip;
+	}
+
+	private void evaluate(int chip) {
+		int[] pins = netlist.pins;
+		int p = netlist.pinStarts[chip];
+		switch (netlist.chipTypes[chip]) {
+			case NAND -> write(pins[p + 2], (values[pins[p]] & values[pins[p + 1]] & 1) ^ 1);
+			case THREE_STATE_BUFFER -> {
+				if ((values[pins[p + 1]] & 1) != 0) {
+					write(pins[p + 2], values[pins[p]] & 1, floating[pins[p]] & 1);
+				} else {
+					write(pins[p + 2], 0, 1);
+				}
+			}
+			case CLOCK -> write(pins[p], (int) ((step / stepsPerClockTick) & 1));
+			case KEY -> write(pins[p], isKeyPressed(state[netlist.stateStarts[chip]]) ? 1 : 0);
+			case MERGE_1_TO_4, MERGE_1_TO_8, MERGE_4_TO_8 -> {
+				BuiltinChip type = netlist.chipTypes[chip];
+				int inputWidth = type.pinWidths[0];
+				int inputMask = (1 << inputWidth) - 1;
+				int value = 0;
+				int floatingBits = 0;
+				for (int i = 0; i < type.numInputs; i++) {
+					value = (value << inputWidth) | (values[pins[p + i]] & inputMask);
+					floatingBits = (floatingBits << inputWidth) | (floating[pins[p + i]] & inputMask);
+				}
+				write(pins[p + type.numInputs], value, floatingBits);
+			}
+			case SPLIT_4_TO_1, SPLIT_8_TO_1, SPLIT_8_TO_4 -> {
+				BuiltinChip type = netlist.chipTypes[chip];
+				int numOutputs = type.pinWidths.length - 1;
+				int outputWidth = type.pinWidths[1];
+				int outputMask = (1 << outputWidth) - 1;
+				int value = values[pins[p]];
+				int floatingBits = floating[pins[p]];
+				for (int i = numOutputs - 1; i >= 0; i--) {
+					write(pins[p + 1 + i], value & outputMask, floatingBits & outputMask);
+					value >>= outputWidth;
+					floatingBits >>= outputWidth;
+				}
+			}
+			case BUS_1, BUS_4, BUS_8 -> {
+				// the input of the Bus (pin 0) and of its Terminus (pin 2) drive both outputs
+				resolve(pins, p, p + 3, 2, pins[p + 1]);
+				resolve(pins, p, p + 3, 2, pins[p + 3]);
+			}
+			case ROM -> {
+				int word = state[netlist.stateStarts[chip] + (values[pins[p]] & 0xff)];
+				write(pins[p + 1], (word >> 8) & 0xff);
+				write(pins[p + 2], word & 0xff);
+			}
+			case DOT_DISPLAY -> evaluateDotDisplay(p, netlist.stateStarts[chip]);
+			case RESOLVE -> {
+				resolve(pins, p + 1, netlist.pinStarts[chip + 1], 1, pins[p]);
+			}
+			default -> {
+				// Bus Termini and displays only have inputs
+			}
+		}
+	}
+
+	/**
+	 * Pins: address, pixel in, reset, write, refresh, clock, pixel out.
+	 * On a rising clock edge the pixel is written into the back buffer, refresh copies the back buffer onto the display.
+	 */
+	private void evaluateDotDisplay(int p, int stateStart) {
+		int[] pins = netlist.pins;
+		int clock = values[pins[p + 5]] & 1;
+		int lastClock = stateStart + 512;
+		if (clock == 1 && state[lastClock] == 0) {
+			int address = values[pins[p]] & 0xff;
+			if ((values[pins[p + 2]] & 1) != 0) {
+				for (int i = 0; i < 256; i++) {
+					state[stateStart + i] = 0;
+				}
+			} else if ((values[pins[p + 3]] & 1) != 0) {
+				state[stateStart + address] = values[pins[p + 1]] & 1;
+			}
+			if ((values[pins[p + 4]] & 1) != 0) {
+				System.arraycopy(state, stateStart, state, stateStart + 256, 256);
+			}
+		}
+		state[lastClock] = clock;
+		write(pins[p + 6], state[stateStart + 256 + (values[pins[p]] & 0xff)]);
+	}
+
+	private boolean isKeyPressed(int keyCode) {
+		int index = "WASDE".indexOf(Character.toUpperCase((char) keyCode));
+		return index != -1 && (keysPressed & (1 << index)) != 0;
+	}
+
+	/**
+	 * Every bit is taken from the first of the pins[from], pins[from + stride], ... (below end) that drives it.
+	 */
+	private void resolve(int[] pins, int from, int end, int stride, int target) {
+		int value = 0;
+		int floatingBits = -1;
+		for (int i = from; i < end; i += stride) {
+			int driven = floatingBits & ~floating[pins[i]];
+			value |= values[pins[i]] & driven;
+			floatingBits &= ~driven;
+		}
+		write(target, value, floatingBits & ((1 << netlist.slotWidths[target]) - 1));
+	}
+
+	private void write(int slot, int value) {
+		write(slot, value, 0);
+	}
+
+	/**
+	 * Floating bits are always 0 in the value, so that they read as 0.
+	 */
+	private void write(int slot, int value, int floatingBits) {
+		value &= ~floatingBits;
+		if (applyImmediately) {
+			apply(slot, value, floatingBits);
+			return;
+		}
+		updateSlots[numUpdates] = slot;
+		updateValues[numUpdates] = value;
+		updateFloating[numUpdates] = floatingBits;
+		numUpdates++;
+	}
+
+	private void apply(int slot, int value, int floatingBits) {
+		if (values[slot] == value && floating[slot] == floatingBits) return;
+		values[slot] = value;
+		floating[slot] = floatingBits;
+		scheduleFanout(slot);
+		if (watchStarts != null) {
+			for (int w = watchStarts[slot]; w < watchStarts[slot + 1]; w++) {
+				int index = watchIndices[w];
+				if (watchChangeEpochs[index] != watchEpoch) {
+					watchChangeEpochs[index] = watchEpoch;
+					changedWatches[numChangedWatches++] = index;
+				}
+			}
+		}
+	}
+
+	private void schedule(int chip) {
+		if (scheduledEpochs[chip] == scheduleEpoch) return;
+		scheduledEpochs[chip] = scheduleEpoch;
+		scheduled[numScheduled++] = chip;
+	}
+
+	private void scheduleFanout(int slot) {
+		int end = netlist.fanoutStarts[slot + 1];
+		for (int i = netlist.fanoutStarts[slot]; i < end; i++) {
+			schedule(netlist.fanout[i]);
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package simulator_program;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records the selected signals of a Simulator into a VCD file.
+ * The simulation thread only writes the changed signals of every step, delta encoded, into an off-heap ring buffer.
+ * A background thread decodes the ring buffer and streams it into the VCD file.
+ *
+ * Signals whose pins are connected share a slot, so they are recorded once and share their VCD identifier.
+ *
+ * Record format: varint step delta, then for every changed slot varint (index delta) and varint (value with the
+ * floating bits in the upper 16 bits), terminated by a zero index delta.
+ */
+public class WaveformTracer {
+	private static final int RING_BUFFER_SIZE = 1 << 24;
+	private static final int MAX_VARINT_SIZE = 5;
+	private static final int UNKNOWN = Integer.MIN_VALUE;
+	/**
+	 * the ring buffer holds many steps, so the writer can sleep long enough to stay out of the way of the simulation
+	 */
+	private static final long WRITER_PARK_NANOS = 2_000_000;
+
+	private final Simulator simulator;
+	private final List<Netlist.Signal> signals;
+	/**
+	 * index into slots and widths of every signal
+	 */
+	private final int[] signalIndices;
+	private final int[] slots;
+	private final int[] widths;
+	private final int[] lastValues;
+	private final int maxRecordSize;
+
+	private final ByteBuffer ringBuffer;
+	private final int mask;
+	private long head;
+	private volatile long publishedHead;
+	private volatile long tail;
+	private long lastRecordStep;
+	private boolean recording;
+
+	private final Thread writerThread;
+	private volatile boolean closed;
+	private IOException writerException;
+
+	private int triggerSlot = -1;
+	private int triggerValue;
+	private boolean triggerOnEquals;
+	private boolean triggered;
+	private long stopStep = Long.MAX_VALUE;
+	private long stepsAfterTrigger = -1;
+
+	public WaveformTracer(Simulator simulator, List<Netlist.Signal> signals, Path path) throws IOException {
+		this.simulator = simulator;
+		this.signals = signals;
+		signalIndices = new int[signals.size()];
+		Map<Long, Integer> indices = new HashMap<>();
+		List<Netlist.Signal> distinct = new ArrayList<>();
+		for (int i = 0; i < signals.size(); i++) {
+			Netlist.Signal signal = signals.get(i);
+			long key = (long) signal.slot << 8 | signal.width;
+			Integer index = indices.get(key);
+			if (index == null) {
+				index = distinct.size();
+				indices.put(key, index);
+				distinct.add(signal);
+			}
+			signalIndices[i] = index;
+		}
+		slots = new int[distinct.size()];
+		widths = new int[distinct.size()];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = distinct.get(i).slot;
+			widths[i] = distinct.get(i).width;
+		}
+		lastValues = new int[slots.length];
+		Arrays.fill(lastValues, UNKNOWN);
+		maxRecordSize = MAX_VARINT_SIZE * (2 * slots.length + 2);
+		if (maxRecordSize > RING_BUFFER_SIZE) {
+			throw new IOException("Too many Signals to trace!");
+		}
+
+		simulator.watch(slots);
+
+		ringBuffer = ByteBuffer.allocateDirect(RING_BUFFER_SIZE);
+		mask = RING_BUFFER_SIZE - 1;
+		triggered = true;
+
+		BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII);
+		writerThread = new Thread(() -> writeVcd(writer), "VCD Writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Only starts recording once the condition "path == value" or "path != value" holds.
+	 * Afterwards, stepsAfterTrigger steps are recorded (or everything, if it is negative).
+	 */
+	public void setTrigger(String condition, List<Netlist.Signal> allSignals, long stepsAfterTrigger) throws IOException {
+		String[] parts = condition.trim().split("\\s*(==|!=)\\s*");
+		if (parts.length != 2) {
+			throw new IOException("Invalid Trigger \"" + condition + "\" (should be for example \"CPU/PC/OUT == 0x2A\")");
+		}
+		for (Netlist.Signal signal : allSignals) {
+			if (signal.path.equals(parts[0])) {
+				triggerSlot = signal.slot;
+			}
+		}
+		if (triggerSlot == -1) {
+			throw new IOException("Could not find the Signal \"" + parts[0] + "\" of the Trigger");
+		}
+		try {
+			triggerValue = Integer.decode(parts[1]);
+		} catch (NumberFormatException e) {
+			throw new IOException("Could not parse the Value of the Trigger");
+		}
+		triggerOnEquals = condition.contains("==");
+		this.stepsAfterTrigger = stepsAfterTrigger;
+		triggered = false;
+	}
+
+	public boolean hasTriggered() {
+		return triggered;
+	}
+
+	/**
+	 * Called after every simulation step.
+	 */
+	public void sample() {
+		long step = simulator.getStep();
+		if (!triggered) {
+			boolean equals = simulator.getFloatingBits(triggerSlot) == 0 && simulator.getValue(triggerSlot) == triggerValue;
+			if (equals != triggerOnEquals) {
+				simulator.clearChangedWatches();
+				return;
+			}
+			triggered = true;
+			if (stepsAfterTrigger >= 0) {
+				stopStep = step + stepsAfterTrigger;
+			}
+		}
+		if (step > stopStep) {
+			simulator.clearChangedWatches();
+			return;
+		}
+
+		// the first recorded step contains every signal, afterwards only the ones the simulator reports as changed
+		int[] changed = simulator.getChangedWatches();
+		int numChanged = simulator.getNumChangedWatches();
+		if (!recording) {
+			recording = true;
+			changed = new int[slots.length];
+			numChanged = changed.length;
+			for (int i = 0; i < numChanged; i++) {
+				changed[i] = i;
+			}
+		} else {
+			Arrays.sort(changed, 0, numChanged);
+		}
+		simulator.clearChangedWatches();
+
+		boolean hasChanges = false;
+		int lastIndex = -1;
+		for (int c = 0; c < numChanged; c++) {
+			int i = changed[c];
+			int slot = slots[i];
+			int value = simulator.getValue(slot) | simulator.getFloatingBits(slot) << 16;
+			if (value == lastValues[i]) continue;
+			lastValues[i] = value;
+			if (!hasChanges) {
+				hasChanges = true;
+				waitForSpace();
+				writeVarint(step - lastRecordStep);
+				lastRecordStep = step;
+			}
+			writeVarint(i - lastIndex);
+			writeVarint(value);
+			lastIndex = i;
+		}
+		if (hasChanges) {
+			writeVarint(0);
+			publishedHead = head;
+		}
+	}
+
+	/**
+	 * Waits until the background thread has written everything into the file.
+	 */
+	public void close() throws IOException {
+		closed = true;
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (writerException != null) {
+			throw writerException;
+		}
+	}
+
+	private void waitForSpace() {
+		while (RING_BUFFER_SIZE - (head - tail) < maxRecordSize) {
+			if (!writerThread.isAlive()) {
+				// the writer failed, drop everything from now on
+				tail = head;
+				return;
+			}
+			LockSupport.parkNanos(10_000);
+		}
+	}
+
+	private void writeVarint(long value) {
+		while ((value & ~0x7fL) != 0) {
+			ringBuffer.put((int) (head++ & mask), (byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		ringBuffer.put((int) (head++ & mask), (byte) value);
+	}
+
+	private void writeVcd(BufferedWriter writer) {
+		try (writer) {
+			String[] identifiers = writeHeader(writer);
+			long position = 0;
+			long time = 0;
+			while (true) {
+				boolean wasClosed = closed;
+				long end = publishedHead;
+				while (position < end) {
+					long[] cursor = { position };
+					time += readVarint(cursor);
+					writer.write('#');
+					writer.write(Long.toString(time));
+					writer.newLine();
+					int index = -1;
+					while (true) {
+						int indexDelta = (int) readVarint(cursor);
+						if (indexDelta == 0) break;
+						index += indexDelta;
+						writeValue(writer, widths[index], (int) readVarint(cursor), identifiers[index]);
+					}
+					position = cursor[0];
+					tail = position;
+				}
+				if (wasClosed && position == publishedHead) break;
+				LockSupport.parkNanos(WRITER_PARK_NANOS);
+			}
+		} catch (IOException e) {
+			writerException = e;
+		}
+	}
+
+	private long readVarint(long[] cursor) {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			byte b = ringBuffer.get((int) (cursor[0]++ & mask));
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) return value;
+			shift += 7;
+		}
+	}
+
+	private static void writeValue(BufferedWriter writer, int width, int value, String identifier) throws IOException {
+		int floatingBits = value >>> 16;
+		if (width == 1) {
+			writer.write(floatingBits != 0 ? 'z' : (char) ('0' + (value & 1)));
+		} else {
+			writer.write('b');
+			for (int bit = width - 1; bit >= 0; bit--) {
+				writer.write((floatingBits >> bit & 1) != 0 ? 'z' : (char) ('0' + (value >> bit & 1)));
+			}
+			writer.write(' ');
+		}
+		writer.write(identifier);
+		writer.newLine();
+	}
+
+	/**
+	 * @return the VCD identifier of every slot
+	 */
+	private String[] writeHeader(BufferedWriter writer) throws IOException {
+		String[] identifiers = new String[slots.length];
+		for (int i = 0; i < identifiers.length; i++) {
+			StringBuilder identifier = new StringBuilder();
+			int number = i;
+			do {
+				identifier.append((char) ('!' + number % 94));
+				number /= 94;
+			} while (number > 0);
+			identifiers[i] = identifier.toString();
+		}
+
+		writer.write("$timescale 1 ns $end");
+		writer.newLine();
+		writer.write("$scope module top $end");
+		writer.newLine();
+
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < signals.size(); i++) {
+			order.add(i);
+		}
+		order.sort((a, b) -> compareChipPaths(signals.get(a).chipPath, signals.get(b).chipPath));
+		List<String> openScopes = new ArrayList<>();
+		for (int i : order) {
+			Netlist.Signal signal = signals.get(i);
+			List<String> scopes = signal.chipPath.isEmpty() ? List.of() : List.of(signal.chipPath.split("/"));
+			int common = 0;
+			while (common < openScopes.size() && common < scopes.size() && openScopes.get(common).equals(scopes.get(common))) {
+				common++;
+			}
+			while (openScopes.size() > common) {
+				openScopes.remove(openScopes.size() - 1);
+				writer.write("$upscope $end");
+				writer.newLine();
+			}
+			for (int s = common; s < scopes.size(); s++) {
+				openScopes.add(scopes.get(s));
+				writer.write("$scope module " + toVcdName(scopes.get(s)) + " $end");
+				writer.newLine();
+			}
+			String name = signal.path.substring(signal.path.lastIndexOf('/') + 1);
+			writer.write("$var wire " + signal.width + " " + identifiers[signalIndices[i]] + " " + toVcdName(name) + " $end");
+			writer.newLine();
+		}
+		for (int s = 0; s <= openScopes.size(); s++) {
+			writer.write("$upscope $end");
+			writer.newLine();
+		}
+		writer.write("$enddefinitions $end");
+		writer.newLine();
+		return identifiers;
+	}
+
+	/**
+	 * Compares the paths Chip by Chip, so every scope is contiguous, even if a Chip name continues with a Character
+	 * that sorts before '/', like "D LATCH+R#2" after "D LATCH+R".
+	 */
+	private static int compareChipPaths(String a, String b) {
+		String[] chipsA = a.isEmpty() ? new String[0] : a.split("/");
+		String[] chipsB = b.isEmpty() ? new String[0] : b.split("/");
+		for (int i = 0; i < chipsA.length && i < chipsB.length; i++) {
+			int result = chipsA[i].compareTo(chipsB[i]);
+			if (result != 0) return result;
+		}
+		return Integer.compare(chipsA.length, chipsB.length);
+	}
+
+	private static String toVcdName(String name) {
+		return name.replace(' ', '_');
+	}
+}